@@ -112,8 +112,7 @@ public class ModernizerAnnotationProcessor extends AbstractProcessor {
                     element.getAnnotation(SuppressWarnings.class).value());
             if (warnings.contains("modernizer")) {
                 if (element.getKind().isClass()) {
-                    annotatedClasses.add(
-                        getFullClassNameRegex(element));
+                    annotatedClasses.add(getInternalClassName(element));
                 } else if (element.getKind().equals(ElementKind.METHOD) ||
                     element.getKind().equals(ElementKind.CONSTRUCTOR)) {
                     annotatedMethods.add(getMethodRepresentation(element));
@@ -167,17 +166,15 @@ public class ModernizerAnnotationProcessor extends AbstractProcessor {
     }
 
     /**
-     * Returns a formatted version of the fully qualified class name
-     * regular expression of the element to perform the necessary
-     * checks in the plugin against the ASM parsed class name.
+     * Returns the internal class name of the element, which the plugin
+     * compares against the ASM parsed class name and the names of its
+     * enclosing classes.
      *
      * Example:
-     * Output: "org/gaul/mypackage/ExampleClass\$TestClass(\$.+)?"
+     * Output: "org/gaul/mypackage/ExampleClass$TestClass"
      */
-    private String getFullClassNameRegex(Element classElement) {
-        return getFullClassName(classElement)
-            .replace('.', '/')
-            .replace("$", "\\$") + "(\\$.+)?";
+    private String getInternalClassName(Element classElement) {
+        return getFullClassName(classElement).replace('.', '/');
     }
 
     /**
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stores the occurrences found in dependency jars, keyed by artifact
+ * coordinates, so that each artifact is scanned once per machine and rule
+ * set.  Entries hold the occurrences found without any ignores, so that
+ * modules which ignore different classes share them, and live in one
+ * directory per rule fingerprint, typically under the local repository.
+ * Entries record the SHA-1 of the jar so that callers can revalidate
+ * mutable artifacts such as snapshots.  Files are written to a temporary
+ * file and renamed so that concurrent builds never observe partial entries.
+ */
+final class ArtifactCache {
+    private static final int FORMAT_VERSION = 1;
+
+    private final File directory;
+    private final String fingerprint;
+    private final Map<String, Violation> violations;
+
+    ArtifactCache(File baseDirectory, String fingerprint,
+            Map<String, Violation> violations) {
+        this.directory = new File(baseDirectory, fingerprint);
+        this.fingerprint = Utils.checkNotNull(fingerprint);
+        this.violations = Utils.checkNotNull(violations);
+    }
+
+    /**
+     * Returns the cached occurrences for the artifact, or null if there are
+     * none.  When checksum is not null, entries written for a jar with a
+     * different checksum are ignored.
+     */
+    Map<String, Collection<ViolationOccurrence>> get(String coordinates,
+            String checksum) throws IOException {
+        DataInputStream in = DataFiles.open(getFile(coordinates),
+                FORMAT_VERSION, fingerprint);
+        if (in == null) {
+            return null;
+        }
+        try {
+            if (!in.readUTF().equals(coordinates)) {
+                return null;
+            }
+            String storedChecksum = in.readUTF();
+            if (checksum != null && !checksum.equals(storedChecksum)) {
+                return null;
+            }
+            int size = in.readInt();
+            Map<String, Collection<ViolationOccurrence>> results =
+                    new LinkedHashMap<String,
+                            Collection<ViolationOccurrence>>();
+            for (int i = 0; i < size; ++i) {
+                String name = in.readUTF();
+                results.put(name, DataFiles.readOccurrences(in, violations));
+            }
+            return results;
+        } finally {
+            Utils.closeQuietly(in);
+        }
+    }
+
+    void put(final String coordinates, final String checksum,
+            final Map<String, Collection<ViolationOccurrence>> results)
+            throws IOException {
+        File file = getFile(coordinates);
+        try {
+            DataFiles.write(file, FORMAT_VERSION, fingerprint,
+                    new DataFiles.Contents() {
+                        @Override
+                        public void write(DataOutputStream out)
+                                throws IOException {
+                            out.writeUTF(coordinates);
+                            out.writeUTF(checksum);
+                            DataFiles.writeOccurrences(out, results);
+                        }
+                    });
+        } catch (IOException ioe) {
+            if (!file.exists()) {
+                throw ioe;
+            }
+            // another build may have written an equivalent entry
+        }
+    }
+
+    /** Returns the SHA-1 of the jar contents. */
+    static String checksum(File jar) throws IOException {
+        MessageDigest digest = Utils.newSha1();
+        InputStream is = new FileInputStream(jar);
+        try {
+            byte[] buffer = new byte[8192];
+            while (true) {
+                int count = is.read(buffer);
+                if (count == -1) {
+                    break;
+                }
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            Utils.closeQuietly(is);
+        }
+        return Utils.toHex(digest.digest());
+    }
+
+    /**
+     * Mark the directory of this rule fingerprint as used and delete all but
+     * the maxDirectories most recently used ones, so that stale rule sets do
+     * not accumulate.
+     */
+    void prune(int maxDirectories) {
+        if (directory.isDirectory()) {
+            directory.setLastModified(System.currentTimeMillis());
+        }
+        File[] directories = directory.getParentFile().listFiles();
+        if (directories == null || directories.length <= maxDirectories) {
+            return;
+        }
+        Arrays.sort(directories, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long x = b.lastModified();
+                long y = a.lastModified();
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        for (int i = maxDirectories; i < directories.length; ++i) {
+            File stale = directories[i];
+            if (!stale.isDirectory() || stale.equals(directory)) {
+                continue;
+            }
+            File[] files = stale.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            stale.delete();
+        }
+    }
+
+    private File getFile(String coordinates) {
+        return new File(directory, Utils.sha1Hex(
+                coordinates.getBytes(Utils.UTF_8)) + ".bin");
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads class files into a per-thread buffer which is reused from one class
+ * to the next.  The buffer is sized from the channel size so that most
+ * classes take a single read, and files larger than MAX_POOLED_SIZE are
+ * read into a one-off array instead of growing the pooled buffer.  The
+ * contents are only valid until the next read on the same thread.
+ */
+final class ClassFileReader {
+    private static final int INITIAL_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ClassFileReader> READERS =
+        new ThreadLocal<ClassFileReader>() {
+            @Override
+            protected ClassFileReader initialValue() {
+                return new ClassFileReader();
+            }
+        };
+
+    private byte[] pooled = new byte[INITIAL_SIZE];
+    private ByteBuffer pooledBuffer = ByteBuffer.wrap(pooled);
+    private byte[] buffer;
+    private int length;
+
+    private ClassFileReader() { }
+
+    static ClassFileReader forCurrentThread() {
+        return READERS.get();
+    }
+
+    void read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > MAX_POOLED_SIZE) {
+                readOnce(channel, size);
+            } else {
+                read(channel, (int) size);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Read a class from a stream, e.g., a ZipInputStream positioned at an
+     * entry, until end of stream.  sizeHint may be -1 when unknown.
+     */
+    void read(InputStream is, long sizeHint) throws IOException {
+        if (sizeHint > pooled.length && sizeHint <= MAX_POOLED_SIZE) {
+            grow((int) sizeHint);
+        }
+        int count = 0;
+        while (true) {
+            if (count == pooled.length) {
+                grow(count + 1);
+            }
+            int read = is.read(pooled, count, pooled.length - count);
+            if (read == -1) {
+                break;
+            }
+            count += read;
+        }
+        buffer = pooled;
+        length = count;
+        if (pooled.length > MAX_POOLED_SIZE) {
+            // do not pin an unusually large buffer to the thread
+            pooled = new byte[INITIAL_SIZE];
+            pooledBuffer = ByteBuffer.wrap(pooled);
+        }
+    }
+
+    /** Returns the buffer holding the class; only getLength bytes are valid. */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    private void read(FileChannel channel, int size) throws IOException {
+        if (size > pooled.length) {
+            grow(size);
+        }
+        pooledBuffer.clear();
+        pooledBuffer.limit(size);
+        while (pooledBuffer.hasRemaining()) {
+            if (channel.read(pooledBuffer) == -1) {
+                break;
+            }
+        }
+        buffer = pooled;
+        length = pooledBuffer.position();
+    }
+
+    /** Grow the pooled buffer to at least size, keeping its contents. */
+    private void grow(int size) {
+        int capacity = pooled.length;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        byte[] newPooled = new byte[capacity];
+        System.arraycopy(pooled, 0, newPooled, 0, pooled.length);
+        pooled = newPooled;
+        pooledBuffer = ByteBuffer.wrap(pooled);
+    }
+
+    /**
+     * Read a large class into its own array.  ClassReader needs a byte[], so
+     * mapping the file would only add a copy.
+     */
+    private void readOnce(FileChannel channel, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Class file too large: " + size);
+        }
+        ByteBuffer once = ByteBuffer.allocate((int) size);
+        while (once.hasRemaining()) {
+            if (channel.read(once) == -1) {
+                break;
+            }
+        }
+        buffer = once.array();
+        length = once.position();
+    }
+}
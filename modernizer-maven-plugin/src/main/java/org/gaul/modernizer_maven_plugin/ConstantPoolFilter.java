@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.util.Collection;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Cheaply decides whether a class can contain any violation by inspecting
+ * only its constant pool.  Every owner which Modernizer reports, i.e.,
+ * interfaces, field and method owners and annotation types, appears in the
+ * constant pool as a UTF-8 entry, either as a bare internal name referenced
+ * by a CONSTANT_Class or as a type descriptor.  Lookups compare raw bytes so
+ * that rejecting a class allocates nothing.
+ */
+final class ConstantPoolFilter {
+    private static final int CONSTANT_UTF8 = 1;
+
+    private final byte[][] table;
+    private final int mask;
+
+    ConstantPoolFilter(Collection<String> owners) {
+        int capacity = 16;
+        while (capacity < owners.size() * 2) {
+            capacity <<= 1;
+        }
+        table = new byte[capacity][];
+        mask = capacity - 1;
+        for (String owner : owners) {
+            byte[] bytes = owner.getBytes(Utils.UTF_8);
+            int index = hash(bytes, 0, bytes.length) & mask;
+            while (table[index] != null &&
+                    !equals(table[index], bytes, 0, bytes.length)) {
+                index = (index + 1) & mask;
+            }
+            table[index] = bytes;
+        }
+    }
+
+    /** Returns false if the class cannot reference any of the owners. */
+    boolean mayReference(ClassReader classReader) {
+        byte[] b = classReader.b;
+        int itemCount = classReader.getItemCount();
+        for (int i = 1; i < itemCount; ++i) {
+            int offset = classReader.getItem(i);
+            // second slot of long and double constants
+            if (offset == 0 || b[offset - 1] != CONSTANT_UTF8) {
+                continue;
+            }
+            int length = classReader.readUnsignedShort(offset);
+            int start = offset + 2;
+            if (contains(b, start, length)) {
+                return true;
+            }
+            if (length > 2 && b[start] == 'L' &&
+                    b[start + length - 1] == ';' &&
+                    contains(b, start + 1, length - 2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(byte[] b, int offset, int length) {
+        int index = hash(b, offset, length) & mask;
+        while (table[index] != null) {
+            if (equals(table[index], b, offset, length)) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    private static int hash(byte[] b, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            hash = 31 * hash + b[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(byte[] expected, byte[] b, int offset,
+            int length) {
+        if (expected.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (expected[i] != b[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
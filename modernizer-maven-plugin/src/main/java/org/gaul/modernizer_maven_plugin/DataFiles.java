@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Reads and writes the binary files of the plugin, i.e., the scan cache,
+ * dependency cache, scan index and module stamp.  Each file starts with a
+ * format version and a fingerprint of the inputs it was computed from.
+ * Files are written to a temporary file in the same directory and renamed,
+ * so that readers, including concurrent builds, never observe partial files.
+ */
+final class DataFiles {
+    private DataFiles() { }
+
+    /** Writes the contents of a file after its header. */
+    interface Contents {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Opens file and reads its header.  Returns null if the file does not
+     * exist or was written with a different format version or fingerprint,
+     * otherwise a stream positioned after the header which the caller must
+     * close.
+     */
+    static DataInputStream open(File file, int formatVersion,
+            String fingerprint) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        boolean valid = false;
+        try {
+            valid = in.readInt() == formatVersion &&
+                    in.readUTF().equals(fingerprint);
+        } finally {
+            if (!valid) {
+                Utils.closeQuietly(in);
+            }
+        }
+        return valid ? in : null;
+    }
+
+    /** Write the header and contents to file, replacing it atomically. */
+    static void write(File file, int formatVersion, String fingerprint,
+            Contents contents) throws IOException {
+        File tmpFile = createTempFile(file);
+        try {
+            DataOutputStream out = create(tmpFile, formatVersion,
+                    fingerprint);
+            try {
+                contents.write(out);
+                out.flush();
+            } finally {
+                Utils.closeQuietly(out);
+            }
+            replace(tmpFile, file);
+        } finally {
+            // only remains if the write failed
+            tmpFile.delete();
+        }
+    }
+
+    /** Returns a new temporary file next to file, creating its directory. */
+    static File createTempFile(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() &&
+                !parent.isDirectory()) {
+            throw new IOException("Could not create directory: " + parent);
+        }
+        return File.createTempFile(file.getName(), ".tmp", parent);
+    }
+
+    /** Opens tmpFile for writing and writes the header. */
+    static DataOutputStream create(File tmpFile, int formatVersion,
+            String fingerprint) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmpFile)));
+        out.writeInt(formatVersion);
+        out.writeUTF(fingerprint);
+        return out;
+    }
+
+    /** Rename the completely written tmpFile to file. */
+    static void replace(File tmpFile, File file) throws IOException {
+        // renaming over an existing file fails on some platforms
+        if (tmpFile.renameTo(file)) {
+            return;
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete: " + file);
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Could not rename " + tmpFile + " to " +
+                    file);
+        }
+    }
+
+    static void writeOccurrences(DataOutputStream out,
+            Collection<ViolationOccurrence> occurrences) throws IOException {
+        out.writeInt(occurrences.size());
+        for (ViolationOccurrence occurrence : occurrences) {
+            out.writeUTF(occurrence.getOwner());
+            out.writeInt(occurrence.getLineNumber());
+            out.writeUTF(occurrence.getViolation().getName());
+        }
+    }
+
+    /** Write occurrences keyed by class hash or entry name. */
+    static void writeOccurrences(DataOutputStream out,
+            Map<String, Collection<ViolationOccurrence>> occurrences)
+            throws IOException {
+        out.writeInt(occurrences.size());
+        for (Map.Entry<String, Collection<ViolationOccurrence>> entry :
+                occurrences.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeOccurrences(out, entry.getValue());
+        }
+    }
+
+    static Collection<ViolationOccurrence> readOccurrences(DataInputStream in,
+            Map<String, Violation> violations) throws IOException {
+        int size = in.readInt();
+        Collection<ViolationOccurrence> occurrences =
+                new ArrayList<ViolationOccurrence>(size);
+        for (int i = 0; i < size; ++i) {
+            String owner = in.readUTF();
+            int lineNumber = in.readInt();
+            String name = in.readUTF();
+            Violation violation = violations.get(name);
+            if (violation == null) {
+                throw new IOException("Unknown violation: " + name);
+            }
+            occurrences.add(new ViolationOccurrence(owner, lineNumber,
+                    violation));
+        }
+        return occurrences;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Classes annotated with @SuppressWarnings("modernizer"), given by internal
+ * name, e.g., org/gaul/Outer$Inner.  Ignoring a class also ignores the
+ * classes nested in it, so lookups check the class name and each enclosing
+ * class name.
+ */
+final class IgnoredClasses {
+    /** Suffix of the regular expressions written by older processors. */
+    private static final String LEGACY_NESTED_SUFFIX = "(\\$.+)?";
+
+    private final Set<String> classNames = new HashSet<String>();
+
+    IgnoredClasses(Collection<String> classNames) {
+        for (String className : classNames) {
+            this.classNames.add(normalize(className));
+        }
+    }
+
+    /**
+     * Converts a line written by older versions of the annotation processor,
+     * e.g., org/gaul/Outer\$Inner(\$.+)?, into an internal class name.
+     */
+    static String normalize(String className) {
+        if (!className.endsWith(LEGACY_NESTED_SUFFIX)) {
+            return className;
+        }
+        return className.substring(0,
+                className.length() - LEGACY_NESTED_SUFFIX.length())
+                .replace("\\$", "$");
+    }
+
+    boolean isEmpty() {
+        return classNames.isEmpty();
+    }
+
+    /** Returns true if the class or any class enclosing it is ignored. */
+    boolean contains(String className) {
+        if (classNames.isEmpty()) {
+            return false;
+        }
+        if (classNames.contains(className)) {
+            return true;
+        }
+        int end = className.lastIndexOf('$');
+        int packageEnd = className.lastIndexOf('/');
+        while (end > packageEnd + 1) {
+            if (classNames.contains(className.substring(0, end))) {
+                return true;
+            }
+            end = className.lastIndexOf('$', end - 1);
+        }
+        return false;
+    }
+}
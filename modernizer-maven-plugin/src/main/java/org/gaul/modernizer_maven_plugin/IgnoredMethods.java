@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Methods annotated with @SuppressWarnings("modernizer"), indexed by class
+ * internal name and method name.  Entries use the representation from
+ * ModernizerAnnotationUtils.getMethodRep, e.g.,
+ * "org/gaul/Example method int[] java.lang.String", and are matched directly
+ * against JVM method descriptors without building strings.
+ */
+final class IgnoredMethods {
+    private final Map<String, Map<String, List<String[]>>> classes =
+            new HashMap<String, Map<String, List<String[]>>>();
+
+    IgnoredMethods(Collection<String> methodReps) {
+        for (String methodRep : methodReps) {
+            String[] parts = methodRep.split(" ");
+            if (parts.length < 3) {
+                continue;
+            }
+            Map<String, List<String[]>> methods = classes.get(parts[0]);
+            if (methods == null) {
+                methods = new HashMap<String, List<String[]>>();
+                classes.put(parts[0], methods);
+            }
+            List<String[]> signatures = methods.get(parts[1]);
+            if (signatures == null) {
+                signatures = new ArrayList<String[]>();
+                methods.put(parts[1], signatures);
+            }
+            // return type followed by parameter types
+            String[] types = new String[parts.length - 2];
+            System.arraycopy(parts, 2, types, 0, types.length);
+            signatures.add(types);
+        }
+    }
+
+    boolean isEmpty() {
+        return classes.isEmpty();
+    }
+
+    /** Returns the ignored methods of a class keyed by name, or null. */
+    Map<String, List<String[]>> getMethods(String className) {
+        return classes.get(className);
+    }
+
+    static boolean contains(Map<String, List<String[]>> methods,
+            String methodName, String methodDescriptor) {
+        if (methods == null) {
+            return false;
+        }
+        List<String[]> signatures = methods.get(methodName);
+        if (signatures == null) {
+            return false;
+        }
+        for (String[] types : signatures) {
+            if (matches(methodDescriptor, types)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String desc, String[] types) {
+        int pos = 1;
+        for (int i = 1; i < types.length; ++i) {
+            if (desc.charAt(pos) == ')') {
+                return false;
+            }
+            pos = matchType(desc, pos, types[i]);
+            if (pos == -1) {
+                return false;
+            }
+        }
+        if (desc.charAt(pos) != ')') {
+            return false;
+        }
+        return matchType(desc, pos + 1, types[0]) == desc.length();
+    }
+
+    /**
+     * Compares the type descriptor starting at pos with a type name as
+     * produced by ModernizerAnnotationUtils.getMethodRep, i.e., a Java class
+     * name where both '/' and '$' are replaced by '.'.  Returns the position
+     * after the type descriptor or -1 if the type does not match.
+     */
+    private static int matchType(String desc, int pos, String expected) {
+        int dimensions = 0;
+        while (desc.charAt(pos) == '[') {
+            ++dimensions;
+            ++pos;
+        }
+        int nameLength;
+        int end;
+        char c = desc.charAt(pos);
+        if (c == 'L') {
+            end = desc.indexOf(';', pos) + 1;
+            nameLength = end - pos - 2;
+            if (expected.length() != nameLength + 2 * dimensions) {
+                return -1;
+            }
+            for (int i = 0; i < nameLength; ++i) {
+                char d = desc.charAt(pos + 1 + i);
+                if (d == '/' || d == '$') {
+                    d = '.';
+                }
+                if (d != expected.charAt(i)) {
+                    return -1;
+                }
+            }
+        } else {
+            String primitive = getPrimitiveName(c);
+            if (primitive == null) {
+                return -1;
+            }
+            end = pos + 1;
+            nameLength = primitive.length();
+            if (expected.length() != nameLength + 2 * dimensions ||
+                    !expected.startsWith(primitive)) {
+                return -1;
+            }
+        }
+        for (int i = nameLength; i < expected.length(); i += 2) {
+            if (expected.charAt(i) != '[' || expected.charAt(i + 1) != ']') {
+                return -1;
+            }
+        }
+        return end;
+    }
+
+    private static String getPrimitiveName(char c) {
+        switch (c) {
+        case 'V':
+            return "void";
+        case 'Z':
+            return "boolean";
+        case 'C':
+            return "char";
+        case 'B':
+            return "byte";
+        case 'S':
+            return "short";
+        case 'I':
+            return "int";
+        case 'F':
+            return "float";
+        case 'J':
+            return "long";
+        case 'D':
+            return "double";
+        default:
+            return null;
+        }
+    }
+}
@@ -18,33 +18,22 @@ package org.gaul.modernizer_maven_plugin;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.regex.Pattern;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import com.google.common.base.Strings;
-
-import org.gaul.modernizer_annotation_processor.ModernizerAnnotationUtils;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.Type;
-import org.objectweb.asm.commons.InstructionAdapter;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 final class Modernizer {
     private final long javaVersion;
@@ -53,7 +42,14 @@ final class Modernizer {
     private final Collection<Pattern> exclusionPatterns;
     private final Collection<String> ignorePackages;
     private final Collection<Pattern> ignoreFullClassNamePatterns;
+    private final Collection<String> ignoreClassNames;
     private final Collection<String> ignoreMethods;
+    private final RuleSet ruleSet;
+    private final Suppressions suppressions;
+    private final ThreadLocal<ModernizerClassVisitor> visitors;
+    private final String fingerprint;
+    private final String ruleFingerprint;
+    private volatile Modernizer withoutIgnores;
 
     Modernizer(String javaVersion, Map<String, Violation> violations,
             Collection<String> exclusions,
@@ -61,6 +57,23 @@ final class Modernizer {
             Collection<String> ignorePackages,
             Collection<Pattern> ignoreClassNamePatterns,
             Collection<String> ignoreMethods) {
+        this(javaVersion, violations, exclusions, exclusionPatterns,
+                ignorePackages, ignoreClassNamePatterns,
+                Collections.<String>emptySet(), ignoreMethods);
+    }
+
+    /**
+     * Creates a Modernizer which also ignores ignoreClassNames, internal
+     * names of classes, e.g., from @SuppressWarnings("modernizer"), along
+     * with their nested classes.
+     */
+    Modernizer(String javaVersion, Map<String, Violation> violations,
+            Collection<String> exclusions,
+            Collection<Pattern> exclusionPatterns,
+            Collection<String> ignorePackages,
+            Collection<Pattern> ignoreClassNamePatterns,
+            Collection<String> ignoreClassNames,
+            Collection<String> ignoreMethods) {
         long version;
         if (javaVersion.startsWith("1.")) {
             version = Long.parseLong(javaVersion.substring(2));
@@ -75,225 +88,379 @@ final class Modernizer {
         this.ignorePackages = Utils.createImmutableSet(ignorePackages);
         this.ignoreFullClassNamePatterns
             = Utils.createImmutableSet(ignoreClassNamePatterns);
+        this.ignoreClassNames = Utils.createImmutableSet(ignoreClassNames);
         this.ignoreMethods = Utils.createImmutableSet(ignoreMethods);
+        this.ruleSet = new RuleSet(version, this.violations, this.exclusions,
+                this.exclusionPatterns);
+        this.suppressions = new Suppressions(this.ignorePackages,
+                this.ignoreFullClassNamePatterns, this.ignoreClassNames,
+                this.ignoreMethods);
+        this.visitors = new VisitorThreadLocal(ruleSet.getIndex(),
+                suppressions);
+        this.fingerprint = computeFingerprint(/*includeIgnores=*/ true);
+        this.ruleFingerprint = computeFingerprint(/*includeIgnores=*/ false);
+    }
+
+    /** Creates a Modernizer with the rules of modernizer but no ignores. */
+    private Modernizer(Modernizer modernizer) {
+        this.javaVersion = modernizer.javaVersion;
+        this.violations = modernizer.violations;
+        this.exclusions = modernizer.exclusions;
+        this.exclusionPatterns = modernizer.exclusionPatterns;
+        this.ignorePackages = Collections.emptySet();
+        this.ignoreFullClassNamePatterns = Collections.emptySet();
+        this.ignoreClassNames = Collections.emptySet();
+        this.ignoreMethods = Collections.emptySet();
+        this.ruleSet = modernizer.ruleSet;
+        this.suppressions = new Suppressions(this.ignorePackages,
+                this.ignoreFullClassNamePatterns, this.ignoreClassNames,
+                this.ignoreMethods);
+        this.visitors = new VisitorThreadLocal(ruleSet.getIndex(),
+                suppressions);
+        // without ignores both fingerprints cover the same inputs
+        this.fingerprint = modernizer.ruleFingerprint;
+        this.ruleFingerprint = modernizer.ruleFingerprint;
+    }
+
+    /**
+     * Returns a Modernizer which shares the compiled rules but applies no
+     * ignores, so that its results depend only on the rule fingerprint and
+     * may be shared across modules.
+     */
+    Modernizer withoutIgnores() {
+        if (fingerprint.equals(ruleFingerprint)) {
+            return this;
+        }
+        Modernizer result = withoutIgnores;
+        if (result == null) {
+            // racing threads create equivalent instances
+            result = new Modernizer(this);
+            withoutIgnores = result;
+        }
+        return result;
+    }
+
+    /** Returns every violation, including inapplicable ones, by name. */
+    Map<String, Violation> getViolations() {
+        return violations;
+    }
+
+    /**
+     * Returns a digest of every input which affects the result of check,
+     * suitable for invalidating cached results.
+     */
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns a digest of the Java version, violations and exclusions but not
+     * of the ignores.  Results computed elsewhere under an equal rule
+     * fingerprint remain valid once filtered through isClassIgnored.
+     */
+    String getRuleFingerprint() {
+        return ruleFingerprint;
+    }
+
+    /** Returns whether the class, given by internal name, is ignored. */
+    boolean isClassIgnored(String internalName) {
+        return suppressions.isClassIgnored(internalName);
+    }
+
+    private String computeFingerprint(boolean includeIgnores) {
+        SortedSet<String> lines = new TreeSet<String>();
+        for (Violation violation : violations.values()) {
+            lines.add("violation " + violation.getName() + " " +
+                    violation.getVersion() + " " + violation.getComment());
+        }
+        for (String exclusion : exclusions) {
+            lines.add("exclusion " + exclusion);
+        }
+        for (Pattern pattern : exclusionPatterns) {
+            lines.add("exclusionPattern " + pattern.flags() + " " +
+                    pattern.pattern());
+        }
+        if (includeIgnores) {
+            for (String ignorePackage : ignorePackages) {
+                lines.add("ignorePackage " + ignorePackage);
+            }
+            for (Pattern pattern : ignoreFullClassNamePatterns) {
+                lines.add("ignoreClassNamePattern " + pattern.flags() + " " +
+                        pattern.pattern());
+            }
+            for (String ignoreClassName : ignoreClassNames) {
+                lines.add("ignoreClass " +
+                        IgnoredClasses.normalize(ignoreClassName));
+            }
+            for (String ignoreMethod : ignoreMethods) {
+                lines.add("ignoreMethod " + ignoreMethod);
+            }
+        }
+        MessageDigest digest = Utils.newSha1();
+        digest.update(("javaVersion " + javaVersion + "\n")
+                .getBytes(Utils.UTF_8));
+        for (String line : lines) {
+            digest.update((line + "\n").getBytes(Utils.UTF_8));
+        }
+        return Utils.toHex(digest.digest());
     }
 
+    /**
+     * Check a class in a single pass which keeps debug information, so that
+     * occurrences report their line numbers.
+     */
     Collection<ViolationOccurrence> check(ClassReader classReader)
             throws IOException {
-        ModernizerClassVisitor classVisitor = new ModernizerClassVisitor(
-                javaVersion, violations, exclusions, exclusionPatterns,
-                ignorePackages, ignoreFullClassNamePatterns, ignoreMethods);
-        classReader.accept(classVisitor, 0);
-        return classVisitor.getOccurrences();
+        if (!ruleSet.getConstantPoolFilter().mayReference(classReader)) {
+            return new ArrayList<ViolationOccurrence>();
+        }
+        ModernizerClassVisitor classVisitor = visitors.get();
+        classVisitor.reset();
+        classReader.accept(classVisitor, ClassReader.SKIP_FRAMES);
+        return classVisitor.takeOccurrences();
+    }
+
+    /**
+     * Check a class, passing each occurrence to sink instead of collecting
+     * them.  Occurrences report line -1 since debug information is skipped.
+     */
+    void check(ClassReader classReader, OccurrenceSink sink)
+            throws IOException {
+        if (!ruleSet.getConstantPoolFilter().mayReference(classReader)) {
+            return;
+        }
+        ModernizerClassVisitor classVisitor = visitors.get();
+        classVisitor.reset(sink);
+        try {
+            classReader.accept(classVisitor,
+                    ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+        } finally {
+            // do not retain the caller's sink
+            classVisitor.reset();
+        }
     }
 
     Collection<ViolationOccurrence> check(InputStream is) throws IOException {
         return check(new ClassReader(is));
     }
 
+    Collection<ViolationOccurrence> check(byte[] bytes) throws IOException {
+        return check(new ClassReader(bytes));
+    }
+
+    Collection<ViolationOccurrence> check(byte[] bytes, int offset,
+            int length) throws IOException {
+        return check(new ClassReader(bytes, offset, length));
+    }
+
+    void check(byte[] bytes, int offset, int length, OccurrenceSink sink)
+            throws IOException {
+        check(new ClassReader(bytes, offset, length), sink);
+    }
+
     static Map<String, Violation> parseFromXml(InputStream is)
-            throws IOException, ParserConfigurationException, SAXException {
-        Map<String, Violation> map =
-                new HashMap<String, Violation>();
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        Document doc = dBuilder.parse(is);
-        doc.getDocumentElement().normalize();
-
-        NodeList nList = doc.getElementsByTagName("violation");
-        for (int temp = 0; temp < nList.getLength(); ++temp) {
-            Node nNode = nList.item(temp);
-            if (nNode.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            Element element = (Element) nNode;
-            String version = element.getElementsByTagName("version").item(0)
-                    .getTextContent();
-            if (!version.startsWith("1.")) {
-                throw new IllegalArgumentException(
-                        "Invalid version, must have the form 1.6");
-            }
-            Violation violation = new Violation(
-                    element.getElementsByTagName("name").item(0)
-                            .getTextContent(),
-                    Integer.parseInt(version.substring(2)),
-                    element.getElementsByTagName("comment").item(0)
-                            .getTextContent());
-            map.put(violation.getName(), violation);
+            throws IOException {
+        return parseFromXml(is, "violations");
+    }
+
+    /**
+     * Parse a violations file in a single streaming pass; source names the
+     * file in error messages.
+     */
+    static Map<String, Violation> parseFromXml(InputStream is, String source)
+            throws IOException {
+        return ViolationParser.parse(is, source);
+    }
+
+    /**
+     * Gives each scanning thread its own visitor chain, which only shares the
+     * immutable index and suppressions, so that classes are visited without
+     * allocating visitors.
+     */
+    private static final class VisitorThreadLocal
+            extends ThreadLocal<ModernizerClassVisitor> {
+        private final ViolationIndex violationIndex;
+        private final Suppressions suppressions;
+
+        VisitorThreadLocal(ViolationIndex violationIndex,
+                Suppressions suppressions) {
+            this.violationIndex = violationIndex;
+            this.suppressions = suppressions;
         }
 
-        return map;
+        @Override
+        protected ModernizerClassVisitor initialValue() {
+            return new ModernizerClassVisitor(violationIndex, suppressions);
+        }
     }
 }
 
-final class ModernizerClassVisitor extends ClassVisitor {
-    private final long javaVersion;
-    private final Map<String, Violation> violations;
-    private final Collection<String> exclusions;
-    private final Collection<Pattern> exclusionPatterns;
-    private final Collection<String> ignorePackages;
-    private final Collection<Pattern> ignoreFullClassNamePatterns;
-    private final Collection<String> ignoreMethods;
-    private final Collection<ViolationOccurrence> occurrences =
-            new ArrayList<ViolationOccurrence>();
-    private String packageName;
+/**
+ * Visits one class at a time and may be reused after reset, along with its
+ * single method visitor, so that visiting allocates only the occurrences it
+ * finds.  By default the visitor collects occurrences itself; reset can
+ * direct them to another sink instead.  Not thread-safe.
+ */
+final class ModernizerClassVisitor extends ClassVisitor
+        implements OccurrenceSink {
+    private static final String QUOTED_INIT = "\"<init>\"";
+
+    private final ViolationIndex violationIndex;
+    private final Suppressions suppressions;
+    private final ModernizerMethodVisitor methodVisitor =
+            new ModernizerMethodVisitor();
+    private OccurrenceSink sink = this;
+    private Collection<ViolationOccurrence> occurrences;
     private String className;
+    private boolean suppressionsResolved;
+    private boolean classIgnored;
+    private Map<String, List<String[]>> classIgnoredMethods;
 
-    ModernizerClassVisitor(long javaVersion,
-            Map<String, Violation> violations, Collection<String> exclusions,
-            Collection<Pattern> exclusionPatterns,
-            Collection<String> ignorePackages,
-            Collection<Pattern> ignoreFullClassNamePatterns,
-            Collection<String> ignoreMethods) {
+    ModernizerClassVisitor(ViolationIndex violationIndex,
+            Suppressions suppressions) {
         super(Opcodes.ASM5);
-        Utils.checkArgument(javaVersion >= 0);
-        this.javaVersion = javaVersion;
-        this.violations = Utils.checkNotNull(violations);
-        this.exclusions = Utils.checkNotNull(exclusions);
-        this.exclusionPatterns = Utils.checkNotNull(exclusionPatterns);
-        this.ignorePackages = Utils.checkNotNull(ignorePackages);
-        this.ignoreFullClassNamePatterns =
-                Utils.checkNotNull(ignoreFullClassNamePatterns);
-        this.ignoreMethods = Utils.createImmutableSet(ignoreMethods);
+        this.violationIndex = Utils.checkNotNull(violationIndex);
+        this.suppressions = Utils.checkNotNull(suppressions);
+    }
+
+    /** Prepare to visit another class, collecting its occurrences. */
+    void reset() {
+        reset(this);
+    }
+
+    /** Prepare to visit another class, passing its occurrences to sink. */
+    void reset(OccurrenceSink newSink) {
+        sink = Utils.checkNotNull(newSink);
+        occurrences = null;
+        className = null;
+        suppressionsResolved = false;
+        classIgnored = false;
+        classIgnoredMethods = null;
     }
 
     @Override
     public void visit(int version, int access, String name, String signature,
             String superName, String[] interfaces) {
         className = name;
-        if (name.contains("/")) {
-            packageName = name.substring(0, name.lastIndexOf('/'))
-                    .replace('/', '.');
-        } else {
-            packageName = "";
-        }
-        if (ignoreClass()) {
-            return;
-        }
         for (String itr : interfaces) {
-            Violation violation = violations.get(itr);
-            checkToken(itr, violation, name, /*lineNumber=*/ -1,
-            /* methodName=*/ "", /* methodDescriptor=*/ "");
+            Violation violation = violationIndex.getType(itr);
+            checkToken(violation, name, /*lineNumber=*/ -1, null, null);
         }
     }
 
     @Override
-    public MethodVisitor visitMethod(int access, final String methodName,
-            final String methodDescriptor, final String methodSignature,
+    public MethodVisitor visitMethod(int access, String methodName,
+            String methodDescriptor, String methodSignature,
             String[] exceptions) {
-        MethodVisitor base = super.visitMethod(access, methodName,
-                methodDescriptor, methodSignature, exceptions);
-        MethodVisitor origVisitor = new MethodVisitor(Opcodes.ASM5, base) {
-        };
-        InstructionAdapter adapter = new InstructionAdapter(Opcodes.ASM5,
-                origVisitor) {
-            private int lineNumber = -1;
-
-            @Override
-            public void visitFieldInsn(int opcode, String owner, String name,
-                    String desc) {
-                visitFieldOrMethod(owner, name, desc);
-            }
-
-            @Override
-            public void visitMethodInsn(int opcode, String owner, String name,
-                    String desc, boolean isInterface) {
-                if (name.equals("<init>")) {
-                    name = "\"<init>\"";
-                }
-                visitFieldOrMethod(owner, name, desc);
-            }
+        // once the suppressions are loaded, returning null lets ClassReader
+        // skip the bodies of ignored methods; until then candidates are
+        // filtered in checkToken
+        if (suppressions.isLoaded() && (isClassIgnored() ||
+                IgnoredMethods.contains(classIgnoredMethods, methodName,
+                        methodDescriptor))) {
+            return null;
+        }
+        methodVisitor.reset(methodName, methodDescriptor);
+        return methodVisitor;
+    }
 
-            @Override
-            public AnnotationVisitor visitAnnotation(String desc,
-                    boolean visible) {
-                String name = Type.getType(desc).getInternalName();
-                Violation violation = violations.get(name);
-                checkToken(name, violation, name, lineNumber,
-                    methodName, methodDescriptor);
+    /**
+     * Record a candidate violation unless its class or method, which is null
+     * outside of method bodies, is ignored.
+     */
+    private void checkToken(Violation violation, String name,
+            int lineNumber, String methodName, String methodDescriptor) {
+        if (violation == null || isClassIgnored()) {
+            return;
+        }
+        if (methodName != null && IgnoredMethods.contains(
+                classIgnoredMethods, methodName, methodDescriptor)) {
+            return;
+        }
+        sink.add(name, lineNumber, violation);
+    }
 
-                return super.visitAnnotation(desc, visible);
-            }
+    @Override
+    public void add(String name, int lineNumber, Violation violation) {
+        if (occurrences == null) {
+            occurrences = new ArrayList<ViolationOccurrence>();
+        }
+        occurrences.add(new ViolationOccurrence(name, lineNumber,
+                violation));
+    }
 
-            private void visitFieldOrMethod(String owner, String name,
-                    String desc) {
-                String token = owner + "." + name + ":" + desc;
-                Violation violation = violations.get(token);
-                checkToken(token, violation, name, lineNumber,
-                    methodName, methodDescriptor);
-            }
+    /** Resolves the suppressions of the current class on first use. */
+    private boolean isClassIgnored() {
+        if (!suppressionsResolved) {
+            classIgnored = suppressions.isClassIgnored(className);
+            classIgnoredMethods = suppressions.getMethods(className);
+            suppressionsResolved = true;
+        }
+        return classIgnored;
+    }
 
-            @Override
-            public void visitLineNumber(int lineNumber, Label start) {
-                this.lineNumber = lineNumber;
-            }
-        };
-        return adapter;
+    /** Returns the occurrences found in the class, handing over ownership. */
+    Collection<ViolationOccurrence> takeOccurrences() {
+        Collection<ViolationOccurrence> result = occurrences;
+        occurrences = null;
+        return result != null ? result : new ArrayList<ViolationOccurrence>();
     }
 
-    private void checkToken(String token, Violation violation, String name,
-            int lineNumber, String methodName, String methodDescriptor) {
-        if (violation != null && !exclusions.contains(token) &&
-                javaVersion >= violation.getVersion() &&
-                !ignorePackages.contains(packageName)) {
-            if (shouldIgnore(token, methodName, methodDescriptor)) {
-                return;
-            }
-            occurrences.add(new ViolationOccurrence(name, lineNumber,
-                    violation));
+    private final class ModernizerMethodVisitor extends MethodVisitor {
+        private String methodName;
+        private String methodDescriptor;
+        private int lineNumber;
+
+        ModernizerMethodVisitor() {
+            super(Opcodes.ASM5);
         }
-    }
 
-    private boolean shouldIgnore(
-        String token,
-        String methodName,
-        String methodDescriptor
-    ) {
-        if (ignoreClass()) {
-            return true;
+        void reset(String name, String descriptor) {
+            methodName = name;
+            methodDescriptor = descriptor;
+            lineNumber = -1;
         }
-        for (Pattern pattern : exclusionPatterns) {
-            if (pattern.matcher(token).matches()) {
-                return true;
-            }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name,
+                String desc) {
+            visitFieldOrMethod(owner, name, desc);
         }
-        for (String prefix : ignorePackages) {
-            if (packageName.startsWith(prefix + ".")) {
-                return true;
-            }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name,
+                String desc, boolean isInterface) {
+            visitFieldOrMethod(owner, name, desc);
         }
-        if (!Strings.isNullOrEmpty(methodName) &&
-            !Strings.isNullOrEmpty(methodDescriptor) &&
-            ignoreMethod(methodName, methodDescriptor)) {
-            return true;
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc,
+                boolean visible) {
+            // annotation descriptors are always of the form Lname;
+            String name = desc.substring(1, desc.length() - 1);
+            Violation violation = violationIndex.getType(name);
+            checkToken(violation, name, lineNumber, methodName,
+                    methodDescriptor);
+
+            return super.visitAnnotation(desc, visible);
         }
-        return false;
-    }
 
-    private boolean ignoreClass() {
-        for (Pattern pattern : ignoreFullClassNamePatterns) {
-            if (pattern.matcher(className).matches()) {
-                return true;
+        private void visitFieldOrMethod(String owner, String name,
+                String desc) {
+            Violation violation = violationIndex.getMember(owner, name, desc);
+            if (violation == null) {
+                return;
             }
+            if (name.equals("<init>")) {
+                name = QUOTED_INIT;
+            }
+            checkToken(violation, name, lineNumber, methodName,
+                    methodDescriptor);
         }
-        return false;
-    }
 
-    private boolean ignoreMethod(String methodName, String methodDescriptor) {
-        String returnType = Type.getReturnType(methodDescriptor).getClassName();
-        List<String> args = new ArrayList<String>();
-        for (Type arg : Type.getArgumentTypes(methodDescriptor)) {
-            args.add(arg.getClassName());
+        @Override
+        public void visitLineNumber(int line, Label start) {
+            this.lineNumber = line;
         }
-        String methodDescription = ModernizerAnnotationUtils.getMethodRep(
-            className, methodName, returnType, args);
-        if (ignoreMethods.contains(methodDescription)) {
-            return true;
-        }
-        return false;
-    }
-
-    Collection<ViolationOccurrence> getOccurrences() {
-        return occurrences;
     }
 }
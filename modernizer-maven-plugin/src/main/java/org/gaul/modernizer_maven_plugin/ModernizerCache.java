@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of compiled Modernizer instances keyed by a digest of
+ * the configuration and the contents of the files it reads.  Maven shares
+ * the plugin class loader between the modules of a reactor, so modules with
+ * identical configuration reuse one engine instead of parsing rule files
+ * and compiling patterns again.  Modernizer is immutable and safe to share
+ * between the threads of a parallel build.
+ */
+final class ModernizerCache {
+    /** Reactors rarely use more than a few distinct configurations. */
+    private static final int MAX_ENTRIES = 8;
+
+    private static final Map<String, Modernizer> CACHE =
+            new LruMap(MAX_ENTRIES);
+
+    private ModernizerCache() { }
+
+    static Modernizer get(String key) {
+        synchronized (CACHE) {
+            return CACHE.get(key);
+        }
+    }
+
+    static void put(String key, Modernizer modernizer) {
+        synchronized (CACHE) {
+            CACHE.put(key, modernizer);
+        }
+    }
+
+    private static final class LruMap
+            extends LinkedHashMap<String, Modernizer> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        LruMap(int maxEntries) {
+            super(16, 0.75f, /*accessOrder=*/ true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<String, Modernizer> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -21,41 +21,108 @@ import static java.util.Collections.emptyList;
 
 import static org.gaul.modernizer_maven_plugin.Utils.checkArgument;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
-import javax.xml.parsers.ParserConfigurationException;
-
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
+import org.apache.maven.project.artifact.InvalidDependencyVersionException;
 import org.gaul.modernizer_annotation_processor.ModernizerAnnotationUtils;
-import org.xml.sax.SAXException;
 
 @Mojo(name = "modernizer", defaultPhase = LifecyclePhase.PROCESS_TEST_CLASSES,
         threadSafe = true)
 public final class ModernizerMojo extends AbstractMojo {
 
     private static final String CLASSPATH_PREFIX = "classpath:";
+    private static final String DEFAULT_VIOLATIONS_FILE =
+            "classpath:/modernizer.xml";
+    private static final String CACHE_FILE_NAME = "modernizer/scan-cache.bin";
+    private static final String ARTIFACT_CACHE_DIRECTORY = ".cache/modernizer";
+    /** Rule sets whose dependency results are kept in the local repository. */
+    private static final int MAX_ARTIFACT_CACHE_DIRECTORIES = 8;
+    private static final String STAMP_FILE_NAME = "modernizer/stamp.bin";
+    /** Violations beyond which a run is not stamped, to bound its messages. */
+    private static final int MAX_STAMP_MESSAGES = 1000;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+    private static final String SPILL_DIRECTORY = "modernizer";
+    private static final String INDEX_FILE_NAME =
+            "modernizer/modernizer-index.bin";
+    /**
+     * Serializes resolution through the legacy resolver, which predates
+     * parallel builds, across the modules and scanning threads of a build.
+     */
+    private static final Object RESOLVER_LOCK = new Object();
 
     /** The maven project (effective pom). */
     @Parameter(defaultValue = "${project}", readonly = true)
     private MavenProject project;
 
+    /** The local repository, which holds the dependency scan cache. */
+    @Parameter(defaultValue = "${localRepository}", readonly = true)
+    private ArtifactRepository localRepository;
+
+    @Component
+    private MavenProjectHelper projectHelper;
+
+    @Component
+    private ArtifactFactory artifactFactory;
+
+    @Component
+    private ArtifactResolver artifactResolver;
+
+    @Component
+    private ArtifactMetadataSource artifactMetadataSource;
+
     /** The output directory into which to find the source code. */
     @Parameter(property = "project.build.sourceDirectory")
     private File sourceDirectory;
@@ -72,6 +139,10 @@ public final class ModernizerMojo extends AbstractMojo {
     @Parameter(property = "project.build.testOutputDirectory")
     private File testOutputDirectory;
 
+    /** The build directory which holds the scan cache. */
+    @Parameter(property = "project.build.directory")
+    private File buildDirectory;
+
     /**
      * Enables violations based on target Java version, e.g., 1.8. For example,
      * Modernizer will detect uses of Vector as violations when targeting Java
@@ -98,7 +169,7 @@ public final class ModernizerMojo extends AbstractMojo {
      * for the default violations file.
      */
     @Parameter(property = "modernizer.violationsFile")
-    protected String violationsFile = "classpath:/modernizer.xml";
+    protected String violationsFile = DEFAULT_VIOLATIONS_FILE;
 
     /**
      * User-specified violation files. The violations loaded from
@@ -166,8 +237,145 @@ public final class ModernizerMojo extends AbstractMojo {
     @Parameter
     protected Set<String> ignoreClassNamePatterns = new HashSet<String>();
 
+    /**
+     * Number of threads used to scan class files.  Main and test classes are
+     * scanned together and violations are always reported in the same order,
+     * regardless of the number of threads.
+     */
+    @Parameter(defaultValue = "1", property = "modernizer.threads")
+    protected int threads = 1;
+
+    /**
+     * Cache scan results in target/modernizer so that unchanged class files
+     * are not analyzed again.  The cache is discarded whenever violations,
+     * exclusions, ignores or the Java version change.  Cached occurrences
+     * are read from disk on demand rather than held in memory.  When neither
+     * the classes nor the configuration changed since the last successful
+     * run with at most 1000 violations, its violations are replayed without
+     * loading the rules at all.
+     */
+    @Parameter(defaultValue = "true", property = "modernizer.useCache")
+    protected boolean useCache = true;
+
+    /**
+     * Also scan the jars of resolved dependencies and report their
+     * violations per artifact, e.g., to audit internal libraries.  Classes
+     * are streamed from the jars without extracting them.  Test dependencies
+     * are scanned only when includeTestClasses is set.  With useCache, the
+     * results for each artifact are cached in .cache/modernizer in the
+     * local repository; snapshots are revalidated by checksum.  Dependencies
+     * are resolved only when this is set, so that the goal itself does not
+     * require dependency resolution.
+     */
+    @Parameter(defaultValue = "false",
+               property = "modernizer.scanDependencies")
+    protected boolean scanDependencies = false;
+
+    /**
+     * With scanDependencies, the groupIds of the dependencies to scan,
+     * specified using &lt;dependencyInclude&gt; child elements.  Specifying
+     * com.example also includes com.example.foo and so on.  When empty,
+     * every dependency is scanned.
+     */
+    @Parameter
+    protected Set<String> dependencyIncludes = new HashSet<String>();
+
+    /**
+     * With failOnViolations, also fail on violations in dependencies.  By
+     * default they are only reported, so that auditing libraries does not
+     * fail the build on third-party code.
+     */
+    @Parameter(defaultValue = "false",
+               property = "modernizer.failOnDependencyViolations")
+    protected boolean failOnDependencyViolations = false;
+
+    /**
+     * Attach an index of the occurrences in the main classes to the project
+     * with the classifier modernizer-index, so that it is installed and
+     * deployed along with the jar.
+     */
+    @Parameter(defaultValue = "false", property = "modernizer.attachIndex")
+    protected boolean attachIndex = false;
+
+    /**
+     * With scanDependencies, resolve the modernizer-index of each released
+     * dependency and use it instead of scanning the jar when it was produced
+     * with the same violations, exclusions and Java version.  Dependencies
+     * without a matching index are scanned as usual.
+     */
+    @Parameter(defaultValue = "false",
+               property = "modernizer.useDependencyIndexes")
+    protected boolean useDependencyIndexes = false;
+
+    /**
+     * Check only the classes compiled from the files listed in this manifest,
+     * e.g., the output of git diff --name-only, instead of every class.  Each
+     * line names a .java or .class file, either absolute or relative to the
+     * project directory or any directory above it such as the repository
+     * root.  A source maps to the class of the same name and its nested
+     * classes; other files are ignored.  Dependencies are not scanned, no
+     * index is attached and the goal returns without loading rules when no
+     * class matches.
+     */
+    @Parameter(property = "modernizer.changedFilesManifest")
+    protected File changedFilesManifest;
+
+    /**
+     * Report the number of occurrences of each violation instead of every
+     * occurrence, e.g., for dashboards.  Classes are visited without debug
+     * information and occurrences are counted rather than retained, so that
+     * memory does not grow with the number of violations.  Dependencies are
+     * not scanned and the caches are not used.
+     */
+    @Parameter(defaultValue = "false", property = "modernizer.summary")
+    protected boolean summary = false;
+
+    /**
+     * Heap budget in megabytes for the occurrences found by a run.  Beyond
+     * it, occurrences are sorted and spilled to temporary files in the
+     * build directory and streamed back when reporting, so that modules with
+     * very many violations run in flat memory.
+     */
+    @Parameter(defaultValue = "32",
+               property = "modernizer.occurrenceBufferMegabytes")
+    protected int occurrenceBufferMegabytes = 32;
+
+    /**
+     * With failOnViolations, fail as soon as more than this many violations
+     * are found instead of checking every class first.  The remaining work
+     * is cancelled and only the violations found so far are reported.  A
+     * negative value disables the budget.
+     */
+    @Parameter(defaultValue = "-1", property = "modernizer.maxViolations")
+    protected int maxViolations = -1;
+
+    /**
+     * Check the most recently modified classes first, so that with
+     * maxViolations new violations fail the build sooner.  Violations are
+     * still reported in the usual order.
+     */
+    @Parameter(defaultValue = "false", property = "modernizer.newestFirst")
+    protected boolean newestFirst = false;
+
     private Modernizer modernizer;
 
+    private ScanCache scanCache;
+
+    private ArtifactCache artifactCache;
+
+    /** Class hashes by file, recorded only when attaching an index. */
+    private ConcurrentMap<File, String> classHashes;
+
+    /** Violations found so far, counted only with a violation budget. */
+    private AtomicLong foundViolations;
+
+    /**
+     * Violation messages logged by this run, recorded for the stamp until
+     * there are more than MAX_STAMP_MESSAGES.
+     */
+    private List<String> messages;
+
+
     /**
      * Skips the plugin execution.
      *
@@ -183,9 +391,362 @@ public final class ModernizerMojo extends AbstractMojo {
             return;
         }
 
-        Map<String, Violation> allViolations = parseViolations(violationsFile);
-        for (String violationsFilePath : violationsFiles) {
-            allViolations.putAll(parseViolations(violationsFilePath));
+        // a partial run neither attaches an index nor updates the stamp and
+        // scan cache, which describe every class
+        boolean partial = changedFilesManifest != null;
+        if (summary && attachIndex) {
+            throw new MojoExecutionException(
+                    "attachIndex cannot be used with summary");
+        }
+        List<File> files = new ArrayList<File>();
+        List<Artifact> artifacts = Collections.<Artifact>emptyList();
+        boolean attach = attachIndex;
+        if (partial) {
+            if (attachIndex) {
+                // the index would only describe the changed classes
+                getLog().warn("Not attaching index when checking changed " +
+                        "files only");
+                attach = false;
+            }
+            Collection<String> changedFiles = readManifest();
+            addChangedClassFiles(changedFiles, sourceDirectory,
+                    outputDirectory, files);
+            if (includeTestClasses) {
+                addChangedClassFiles(changedFiles, testSourceDirectory,
+                        testOutputDirectory, files);
+            }
+            if (files.isEmpty()) {
+                getLog().info("No classes compiled from changed files");
+                return;
+            }
+            getLog().info("Checking " + files.size() +
+                    " classes compiled from changed files");
+        } else {
+            recurseFiles(outputDirectory, files);
+            if (includeTestClasses) {
+                recurseFiles(testOutputDirectory, files);
+            }
+            if (scanDependencies && !summary) {
+                artifacts = getDependencyArtifacts();
+            }
+        }
+        String engineKey = computeEngineKey();
+
+        File stampFile = null;
+        String stamp = null;
+        if (useCache && buildDirectory != null && !partial && !summary) {
+            stampFile = new File(buildDirectory, STAMP_FILE_NAME);
+            stamp = computeModuleStamp(engineKey, files, artifacts);
+            if (replayStamp(stampFile, stamp)) {
+                return;
+            }
+            messages = new ArrayList<String>();
+        }
+
+        modernizer = ModernizerCache.get(engineKey);
+        if (modernizer == null) {
+            modernizer = createModernizer();
+            ModernizerCache.put(engineKey, modernizer);
+        } else {
+            getLog().debug("Reusing modernizer with identical configuration");
+        }
+        if (summary) {
+            summarize(files);
+            return;
+        }
+
+        File cacheFile = null;
+        if (useCache && buildDirectory != null) {
+            cacheFile = new File(buildDirectory, CACHE_FILE_NAME);
+            scanCache = loadScanCache(cacheFile, modernizer.getViolations());
+        }
+        if (useCache && scanDependencies && localRepository != null) {
+            // results are cached without ignores so that modules share them
+            artifactCache = new ArtifactCache(
+                    new File(localRepository.getBasedir(),
+                            ARTIFACT_CACHE_DIRECTORY),
+                    modernizer.getRuleFingerprint(),
+                    modernizer.getViolations());
+            artifactCache.prune(MAX_ARTIFACT_CACHE_DIRECTORIES);
+        }
+
+        if (attach) {
+            classHashes = new ConcurrentHashMap<File, String>();
+        }
+
+        final ScanIndex index = attach ?
+                new ScanIndex(modernizer.getRuleFingerprint()) : null;
+        OccurrenceStore store = new OccurrenceStore(
+                Math.max(occurrenceBufferMegabytes, 1) * 1024L * 1024L,
+                new File(buildDirectory != null ? buildDirectory :
+                        outputDirectory.getParentFile(), SPILL_DIRECTORY));
+        foundViolations = failOnViolations && maxViolations >= 0 ?
+                new AtomicLong() : null;
+        ExecutorService executor = newExecutor();
+        try {
+            List<Callable<Void>> tasks = createFileTasks(files, store, index);
+            // dependencies queue behind the classes of the module itself
+            tasks.addAll(createArtifactTasks(artifacts, files.size(), store));
+            runTasks(executor, tasks);
+            boolean overBudget = isOverBudget();
+            if (store.hasSpilled()) {
+                getLog().debug("Spilled " + store.size() +
+                        " occurrences to disk");
+            }
+            long count = emitViolations(store, files, artifacts, !overBudget);
+            if (overBudget) {
+                // the caches and index would only cover the checked classes
+                throw new MojoExecutionException("Found " + count +
+                        " violations, more than maxViolations " +
+                        maxViolations);
+            }
+            if (scanCache != null && !partial) {
+                saveScanCache(cacheFile);
+            }
+            if (index != null) {
+                File indexFile = new File(buildDirectory, INDEX_FILE_NAME);
+                index.write(indexFile);
+                projectHelper.attachArtifact(project, ScanIndex.TYPE,
+                        ScanIndex.CLASSIFIER, indexFile);
+            }
+            if (failOnViolations && count != 0) {
+                throw new MojoExecutionException("Found " + count +
+                        " violations");
+            }
+            if (stampFile != null && messages != null) {
+                try {
+                    ModuleStamp.write(stampFile, stamp, messages);
+                } catch (IOException ioe) {
+                    getLog().warn("Could not write stamp: " + stampFile, ioe);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new MojoExecutionException("Error reading Java classes", ioe);
+        } finally {
+            if (executor != null) {
+                shutdown(executor);
+            }
+            store.close();
+            Utils.closeQuietly(scanCache);
+        }
+    }
+
+    /**
+     * Count the occurrences in the classes per violation and report the
+     * counts, most frequent first, instead of each occurrence.
+     */
+    private void summarize(List<File> files) throws MojoExecutionException {
+        final ViolationCounts counts = new ViolationCounts();
+        ExecutorService executor = newExecutor();
+        try {
+            List<Callable<Void>> tasks =
+                    new ArrayList<Callable<Void>>(files.size());
+            for (final File file : files) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        ClassFileReader reader =
+                                ClassFileReader.forCurrentThread();
+                        reader.read(file);
+                        modernizer.check(reader.getBuffer(), 0,
+                                reader.getLength(), counts);
+                        return null;
+                    }
+                });
+            }
+            runTasks(executor, tasks);
+        } catch (IOException ioe) {
+            throw new MojoExecutionException("Error reading Java classes", ioe);
+        } finally {
+            if (executor != null) {
+                shutdown(executor);
+            }
+        }
+        for (Violation violation : counts.getViolations()) {
+            logViolation(counts.get(violation) + ": " +
+                    violation.getComment() + " [" + violation.getName() + "]");
+        }
+        long total = counts.getTotal();
+        getLog().info("Found " + total + " violations in " + files.size() +
+                " classes");
+        if (failOnViolations && total != 0) {
+            throw new MojoExecutionException("Found " + total +
+                    " violations");
+        }
+    }
+
+    /** Returns a pool of scanning threads, or null to scan inline. */
+    private ExecutorService newExecutor() {
+        return threads <= 1 ? null : Executors.newFixedThreadPool(threads,
+                new DaemonThreadFactory());
+    }
+
+    /**
+     * Interrupt the threads of executor and wait for their tasks to finish,
+     * so that none still uses the stores the caller is about to close.
+     */
+    private void shutdown(ExecutorService executor) {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS)) {
+                getLog().warn("Scanning threads did not stop within " +
+                        SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns a digest of the configuration and of the contents of every
+     * file createModernizer reads.  Equal keys yield equivalent engines.
+     */
+    private String computeEngineKey() throws MojoExecutionException {
+        List<String> lines = new ArrayList<String>();
+        lines.add("javaVersion " + javaVersion);
+        // the bundled violations cannot change within a plugin class loader
+        lines.add("violationsFile " + violationsFile + " " +
+                (DEFAULT_VIOLATIONS_FILE.equals(violationsFile) ? "bundled" :
+                hashContents(openViolationsFile(violationsFile),
+                        violationsFile)));
+        for (String path : violationsFiles) {
+            lines.add("violationsFiles " + path + " " +
+                    hashContents(openViolationsFile(path), path));
+        }
+        for (String exclusion : new TreeSet<String>(exclusions)) {
+            lines.add("exclusion " + exclusion);
+        }
+        if (exclusionsFile != null) {
+            lines.add("exclusionsFile " + exclusionsFile + " " +
+                    hashContents(openExclusionsFile(exclusionsFile),
+                            exclusionsFile));
+        }
+        for (String pattern : new TreeSet<String>(exclusionPatterns)) {
+            lines.add("exclusionPattern " + pattern);
+        }
+        for (String ignorePackage : new TreeSet<String>(ignorePackages)) {
+            lines.add("ignorePackage " + ignorePackage);
+        }
+        for (String pattern : new TreeSet<String>(ignoreClassNamePatterns)) {
+            lines.add("ignoreClassNamePattern " + pattern);
+        }
+        File[] directories = {outputDirectory, testOutputDirectory};
+        String[] names = {
+            ModernizerAnnotationUtils.IGNORE_CLASSES_FILE_NAME,
+            ModernizerAnnotationUtils.IGNORE_METHODS_FILE_NAME
+        };
+        for (File directory : directories) {
+            for (String name : names) {
+                File file = new File(
+                        ModernizerAnnotationUtils.getOutputDir(directory),
+                        name);
+                // contents only, since each module has its own directories
+                lines.add("ignoreFile " + name + " " + (file.exists() ?
+                        hashContents(openFile(file), file.toString()) :
+                        "none"));
+            }
+        }
+        MessageDigest digest = Utils.newSha1();
+        for (String line : lines) {
+            digest.update((line + "\n").getBytes(Utils.UTF_8));
+        }
+        return Utils.toHex(digest.digest());
+    }
+
+    /**
+     * Returns a digest of everything which affects the outcome of a run: the
+     * engine key, the plugin itself, the options and the paths, sizes and
+     * modification times of the classes and dependency jars to scan.
+     */
+    private String computeModuleStamp(String engineKey, List<File> files,
+            List<Artifact> artifacts) {
+        List<String> lines = new ArrayList<String>();
+        lines.add("engine " + engineKey);
+        CodeSource codeSource =
+                ModernizerMojo.class.getProtectionDomain().getCodeSource();
+        try {
+            lines.add("plugin " + (codeSource == null ? "unknown" :
+                    ModuleStamp.describeFile(
+                            new File(codeSource.getLocation().toURI()))));
+        } catch (URISyntaxException use) {
+            lines.add("plugin " + codeSource.getLocation());
+        }
+        lines.add("options " + failOnViolations + " " + includeTestClasses +
+                " " + violationLogLevel + " " + scanDependencies + " " +
+                useDependencyIndexes + " " + attachIndex + " " +
+                maxViolations + " " + failOnDependencyViolations);
+        lines.add("directories " + sourceDirectory + " " +
+                testSourceDirectory + " " + outputDirectory + " " +
+                testOutputDirectory);
+        Map<String, File> artifactFiles = new LinkedHashMap<String, File>();
+        for (Artifact artifact : artifacts) {
+            artifactFiles.put(artifact.getId(), artifact.getFile());
+        }
+        return ModuleStamp.compute(lines, files, artifactFiles);
+    }
+
+    /**
+     * Replay the violations of the last successful run if its stamp matches,
+     * returning whether the run may be skipped.
+     */
+    private boolean replayStamp(File stampFile, String stamp) {
+        File indexFile = new File(buildDirectory, INDEX_FILE_NAME);
+        if (attachIndex && !indexFile.exists()) {
+            return false;
+        }
+        List<String> recorded;
+        try {
+            recorded = ModuleStamp.read(stampFile, stamp);
+        } catch (IOException ioe) {
+            getLog().debug("Ignoring unreadable stamp: " + stampFile, ioe);
+            return false;
+        }
+        if (recorded == null) {
+            return false;
+        }
+        getLog().debug("Classes and configuration unchanged since last run");
+        for (String message : recorded) {
+            logViolation(message);
+        }
+        if (attachIndex) {
+            projectHelper.attachArtifact(project, ScanIndex.TYPE,
+                    ScanIndex.CLASSIFIER, indexFile);
+        }
+        return true;
+    }
+
+    private static String hashContents(InputStream is, String path)
+            throws MojoExecutionException {
+        try {
+            return Utils.sha1Hex(Utils.readAllBytes(is));
+        } catch (IOException ioe) {
+            throw new MojoExecutionException("Error reading file: " + path,
+                    ioe);
+        } finally {
+            Utils.closeQuietly(is);
+        }
+    }
+
+    private static InputStream openFile(File file)
+            throws MojoExecutionException {
+        try {
+            return new FileInputStream(file);
+        } catch (FileNotFoundException fnfe) {
+            throw new MojoExecutionException("Error opening file: " + file,
+                    fnfe);
+        }
+    }
+
+    /** Parse and compile the rules and ignores into a new Modernizer. */
+    private Modernizer createModernizer() throws MojoExecutionException {
+        Map<String, Violation> allViolations =
+                DEFAULT_VIOLATIONS_FILE.equals(violationsFile) ?
+                readDefaultViolations() : parseViolations(violationsFile);
+        // later files override earlier ones
+        for (Map<String, Violation> fileViolations :
+                parseViolations(violationsFiles)) {
+            allViolations.putAll(fileViolations);
         }
 
         Set<String> allExclusions = new HashSet<String>();
@@ -214,20 +775,13 @@ public final class ModernizerMojo extends AbstractMojo {
             }
         }
 
-        Collection<String> ignoreClasses = getIgnoreElements(new File(
+        Set<String> allIgnoreClassNames = new HashSet<String>();
+        allIgnoreClassNames.addAll(getIgnoreElements(new File(
             ModernizerAnnotationUtils.getOutputDir(outputDirectory),
-            ModernizerAnnotationUtils.IGNORE_CLASSES_FILE_NAME));
-        for (String ignoreClass : ignoreClasses) {
-            allIgnoreFullClassNamePatterns.add(Pattern.compile(ignoreClass));
-        }
-
-        Collection<String> ignoreTestClasses = getIgnoreElements(new File(
+            ModernizerAnnotationUtils.IGNORE_CLASSES_FILE_NAME)));
+        allIgnoreClassNames.addAll(getIgnoreElements(new File(
             ModernizerAnnotationUtils.getOutputDir(testOutputDirectory),
-            ModernizerAnnotationUtils.IGNORE_CLASSES_FILE_NAME));
-        for (String ignoreTestClass : ignoreTestClasses) {
-            allIgnoreFullClassNamePatterns
-                .add(Pattern.compile(ignoreTestClass));
-        }
+            ModernizerAnnotationUtils.IGNORE_CLASSES_FILE_NAME)));
 
         Set<String> allIgnoreMethodNames = new HashSet<String>();
         allIgnoreMethodNames.addAll(getIgnoreElements(new File(
@@ -237,21 +791,29 @@ public final class ModernizerMojo extends AbstractMojo {
             ModernizerAnnotationUtils.getOutputDir(testOutputDirectory),
             ModernizerAnnotationUtils.IGNORE_METHODS_FILE_NAME)));
 
-        modernizer = new Modernizer(javaVersion, allViolations, allExclusions,
+        return new Modernizer(javaVersion, allViolations, allExclusions,
                 allExclusionPatterns, ignorePackages,
-                allIgnoreFullClassNamePatterns, allIgnoreMethodNames);
+                allIgnoreFullClassNamePatterns, allIgnoreClassNames,
+                allIgnoreMethodNames);
+    }
 
+    private ScanCache loadScanCache(File cacheFile,
+            Map<String, Violation> violations) {
+        String fingerprint = modernizer.getFingerprint();
         try {
-            long count = recurseFiles(outputDirectory);
-            if (includeTestClasses) {
-                count += recurseFiles(testOutputDirectory);
-            }
-            if (failOnViolations && count != 0) {
-                throw new MojoExecutionException("Found " + count +
-                        " violations");
-            }
+            return ScanCache.load(cacheFile, fingerprint, violations);
         } catch (IOException ioe) {
-            throw new MojoExecutionException("Error reading Java classes", ioe);
+            getLog().debug("Ignoring unreadable scan cache: " + cacheFile,
+                    ioe);
+            return ScanCache.create(cacheFile, fingerprint, violations);
+        }
+    }
+
+    private void saveScanCache(File cacheFile) {
+        try {
+            scanCache.save();
+        } catch (IOException ioe) {
+            getLog().warn("Could not write scan cache: " + cacheFile, ioe);
         }
     }
 
@@ -264,8 +826,86 @@ public final class ModernizerMojo extends AbstractMojo {
         return ignoreElements;
     }
 
+    /**
+     * Read the bundled violations from the binary database generated at
+     * build time, falling back to the XML when it is unavailable, e.g.,
+     * when running from an IDE.
+     */
+    private static Map<String, Violation> readDefaultViolations()
+            throws MojoExecutionException {
+        InputStream is = Modernizer.class.getResourceAsStream(
+                ViolationDatabase.RESOURCE_NAME);
+        if (is == null) {
+            return parseViolations(DEFAULT_VIOLATIONS_FILE);
+        }
+        try {
+            return ViolationDatabase.read(is);
+        } catch (IOException ioe) {
+            throw new MojoExecutionException(
+                    "Error reading violation data", ioe);
+        } finally {
+            Utils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * Parse the violation files, concurrently when threads allows, and
+     * return their violations in the order of the paths.
+     */
+    private List<Map<String, Violation>> parseViolations(List<String> paths)
+            throws MojoExecutionException {
+        List<Map<String, Violation>> results =
+                new ArrayList<Map<String, Violation>>(paths.size());
+        if (threads <= 1 || paths.size() <= 1) {
+            for (String path : paths) {
+                results.add(parseViolations(path));
+            }
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(threads, paths.size()), new DaemonThreadFactory());
+        try {
+            List<Future<Map<String, Violation>>> futures =
+                    new ArrayList<Future<Map<String, Violation>>>(
+                            paths.size());
+            for (final String path : paths) {
+                futures.add(executor.submit(
+                        new Callable<Map<String, Violation>>() {
+                            @Override
+                            public Map<String, Violation> call()
+                                    throws MojoExecutionException {
+                                return parseViolations(path);
+                            }
+                        }));
+            }
+            for (Future<Map<String, Violation>> future : futures) {
+                results.add(getResult(future));
+            }
+        } catch (IOException ioe) {
+            throw new MojoExecutionException("Error reading violation data",
+                    ioe);
+        } finally {
+            shutdown(executor);
+        }
+        return results;
+    }
+
     private static Map<String, Violation> parseViolations(
             String violationsFilePath) throws MojoExecutionException {
+        InputStream is = openViolationsFile(violationsFilePath);
+        try {
+            return Modernizer.parseFromXml(is, violationsFilePath);
+        } catch (IOException ioe) {
+            throw new MojoExecutionException(
+                    "Error reading violation data: " + ioe.getMessage(), ioe);
+        } finally {
+            Utils.closeQuietly(is);
+        }
+    }
+
+    private static InputStream openViolationsFile(String violationsFilePath)
+            throws MojoExecutionException {
         InputStream is;
         if (violationsFilePath.startsWith(CLASSPATH_PREFIX)) {
             String classpath =
@@ -283,39 +923,17 @@ public final class ModernizerMojo extends AbstractMojo {
                         "Error opening violation file: " + file, fnfe);
             }
         }
-        try {
-            return Modernizer.parseFromXml(is);
-        } catch (IOException ioe) {
-            throw new MojoExecutionException(
-                    "Error reading violation data", ioe);
-        } catch (ParserConfigurationException pce) {
-            throw new MojoExecutionException(
-                    "Error parsing violation data", pce);
-        } catch (SAXException saxe) {
+        if (is == null) {
             throw new MojoExecutionException(
-                    "Error parsing violation data", saxe);
-        } finally {
-            Utils.closeQuietly(is);
+                    "Could not find violation file: " + violationsFilePath);
         }
+        return is;
     }
 
     private Collection<String> readExclusionsFile(String exclusionsFilePath)
             throws MojoExecutionException {
-        InputStream is = null;
+        InputStream is = openExclusionsFile(exclusionsFilePath);
         try {
-            File file = new File(exclusionsFilePath);
-            if (file.exists()) {
-                is = new FileInputStream(exclusionsFilePath);
-            } else {
-                is = this.getClass().getClassLoader().getResourceAsStream(
-                        exclusionsFilePath);
-            }
-            if (is == null) {
-                throw new MojoExecutionException(
-                        "Could not find exclusion file: " +
-                        exclusionsFilePath);
-            }
-
             return Utils.readAllLines(is);
         } catch (IOException ioe) {
             throw new MojoExecutionException(
@@ -326,50 +944,642 @@ public final class ModernizerMojo extends AbstractMojo {
         }
     }
 
-    private long recurseFiles(File file) throws IOException {
-        long count = 0;
+    private InputStream openExclusionsFile(String exclusionsFilePath)
+            throws MojoExecutionException {
+        File file = new File(exclusionsFilePath);
+        InputStream is;
+        if (file.exists()) {
+            is = openFile(file);
+        } else {
+            is = this.getClass().getClassLoader().getResourceAsStream(
+                    exclusionsFilePath);
+        }
+        if (is == null) {
+            throw new MojoExecutionException(
+                    "Could not find exclusion file: " + exclusionsFilePath);
+        }
+        return is;
+    }
+
+    private static void recurseFiles(File file, List<File> files) {
         if (!file.exists()) {
-            return count;
+            return;
         }
         if (file.isDirectory()) {
-            String[] children = file.list();
+            File[] children = file.listFiles();
             if (children != null) {
-                for (String child : children) {
-                    count += recurseFiles(new File(file, child));
+                // sort to report violations in a stable order
+                Arrays.sort(children);
+                for (File child : children) {
+                    recurseFiles(child, files);
                 }
             }
         } else if (file.getPath().endsWith(".class")) {
-            InputStream is = new FileInputStream(file);
-            try {
+            files.add(file);
+        }
+    }
+
+    /**
+     * Add the class files in classRoot which the changed files map to,
+     * either directly or from their sources in sourceRoot.
+     */
+    static void addChangedClassFiles(Collection<String> changedFiles,
+            File sourceRoot, File classRoot, List<File> files) {
+        Set<File> classFiles = new TreeSet<File>();
+        for (String line : changedFiles) {
+            String path = line.trim();
+            if (path.endsWith(".class")) {
+                String relative = relativize(path, classRoot);
+                if (relative != null) {
+                    File classFile = new File(classRoot, relative);
+                    if (classFile.isFile()) {
+                        classFiles.add(classFile);
+                    }
+                }
+            } else if (path.endsWith(".java")) {
+                String relative = relativize(path, sourceRoot);
+                if (relative != null) {
+                    addClassFiles(new File(classRoot, relative.substring(
+                            0, relative.length() - ".java".length())),
+                            classFiles);
+                }
+            }
+        }
+        files.addAll(classFiles);
+    }
+
+    private Collection<String> readManifest() throws MojoExecutionException {
+        InputStream is = openFile(changedFilesManifest);
+        try {
+            return Utils.readAllLines(is);
+        } catch (IOException ioe) {
+            throw new MojoExecutionException("Error reading manifest: " +
+                    changedFilesManifest, ioe);
+        } finally {
+            Utils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * Returns the path of file relative to directory, or null if it is not
+     * inside it.  Relative paths are resolved against the ancestors of
+     * directory from the outermost inwards, so that a path relative to the
+     * repository root is not mistaken for one inside directory.
+     */
+    static String relativize(String path, File directory) {
+        File absoluteDirectory = directory.getAbsoluteFile();
+        String prefix = absoluteDirectory.getPath() + File.separator;
+        File file = new File(path);
+        if (file.isAbsolute()) {
+            return file.getPath().startsWith(prefix) ?
+                    file.getPath().substring(prefix.length()) : null;
+        }
+        List<File> parents = new ArrayList<File>();
+        for (File parent = absoluteDirectory; parent != null;
+                parent = parent.getParentFile()) {
+            parents.add(parent);
+        }
+        for (int i = parents.size() - 1; i >= 0; --i) {
+            String candidate = new File(parents.get(i), path).getPath();
+            if (candidate.startsWith(prefix)) {
+                return candidate.substring(prefix.length());
+            }
+        }
+        return null;
+    }
+
+    /** Add base.class and its nested classes base$*.class if present. */
+    static void addClassFiles(File base, Set<File> classFiles) {
+        File classFile = new File(base.getPath() + ".class");
+        if (classFile.isFile()) {
+            classFiles.add(classFile);
+        }
+        File[] siblings = base.getParentFile().listFiles();
+        if (siblings == null) {
+            return;
+        }
+        String nestedPrefix = base.getName() + "$";
+        for (File sibling : siblings) {
+            String name = sibling.getName();
+            if (name.startsWith(nestedPrefix) && name.endsWith(".class")) {
+                classFiles.add(sibling);
+            }
+        }
+    }
+
+    /**
+     * Returns tasks which check the classes, adding their occurrences to the
+     * store as unit i for the i-th file and to the index for main classes.
+     */
+    private List<Callable<Void>> createFileTasks(List<File> files,
+            final OccurrenceStore store, final ScanIndex index) {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(
+                files.size());
+        final String prefix = outputDirectory.getPath() + File.separator;
+        for (int i : getScanOrder(files)) {
+            final File file = files.get(i);
+            final int unit = i;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    if (isOverBudget()) {
+                        return null;
+                    }
+                    Collection<ViolationOccurrence> occurrences =
+                            checkFile(file);
+                    store.add(unit, occurrences);
+                    if (index != null && file.getPath().startsWith(prefix)) {
+                        index.add(file.getPath().substring(prefix.length())
+                                .replace(File.separatorChar, '/'),
+                                classHashes.get(file), occurrences);
+                    }
+                    countViolations(occurrences.size());
+                    return null;
+                }
+            });
+        }
+        return tasks;
+    }
+
+    /**
+     * Returns the indexes of the files in the order to check them, the most
+     * recently modified first with newestFirst.
+     */
+    private List<Integer> getScanOrder(List<File> files) {
+        List<Integer> order = new ArrayList<Integer>(files.size());
+        final long[] lastModified = new long[files.size()];
+        for (int i = 0; i < files.size(); ++i) {
+            order.add(i);
+            if (newestFirst) {
+                lastModified[i] = files.get(i).lastModified();
+            }
+        }
+        if (newestFirst) {
+            // stable, so classes modified together keep their order
+            Collections.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    long x = lastModified[b];
+                    long y = lastModified[a];
+                    return x < y ? -1 : (x == y ? 0 : 1);
+                }
+            });
+        }
+        return order;
+    }
+
+    /**
+     * Returns tasks which check the dependency jars, adding their
+     * occurrences to the store as unit firstUnit + i for the i-th artifact.
+     */
+    private List<Callable<Void>> createArtifactTasks(List<Artifact> artifacts,
+            int firstUnit, final OccurrenceStore store) {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(
+                artifacts.size());
+        for (int i = 0; i < artifacts.size(); ++i) {
+            final Artifact artifact = artifacts.get(i);
+            final int unit = firstUnit + i;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    if (isOverBudget()) {
+                        return null;
+                    }
+                    Map<String, Collection<ViolationOccurrence>> results =
+                            checkArtifact(artifact);
+                    store.add(unit, results);
+                    if (failOnDependencyViolations) {
+                        int count = 0;
+                        for (Collection<ViolationOccurrence> occurrences :
+                                results.values()) {
+                            count += occurrences.size();
+                        }
+                        countViolations(count);
+                    }
+                    return null;
+                }
+            });
+        }
+        return tasks;
+    }
+
+    /**
+     * Run the tasks and wait for them in the order they complete, stopping
+     * as soon as one fails or the violation budget is exceeded.  Without an
+     * executor the tasks run one at a time on the calling thread and the
+     * remaining ones are never started.
+     */
+    void runTasks(ExecutorService executor,
+            List<Callable<Void>> tasks)
+            throws IOException, MojoExecutionException {
+        if (executor == null) {
+            for (Callable<Void> task : tasks) {
+                FutureTask<Void> future = new FutureTask<Void>(task);
+                future.run();
+                getResult(future);
+                if (isOverBudget()) {
+                    return;
+                }
+            }
+            return;
+        }
+        CompletionService<Void> completionService =
+                new ExecutorCompletionService<Void>(executor);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(
+                tasks.size());
+        for (Callable<Void> task : tasks) {
+            futures.add(completionService.submit(task));
+        }
+        try {
+            for (int i = 0; i < futures.size(); ++i) {
+                try {
+                    getResult(completionService.take());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Interrupted", ie);
+                }
+                if (isOverBudget()) {
+                    return;
+                }
+            }
+        } finally {
+            // running tasks finish but their results are discarded
+            for (Future<Void> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private void countViolations(int count) {
+        if (foundViolations != null && count != 0) {
+            foundViolations.addAndGet(count);
+        }
+    }
+
+    private boolean isOverBudget() {
+        return foundViolations != null &&
+                foundViolations.get() > maxViolations;
+    }
+
+    /**
+     * Returns the dependency jars to scan, ordered by id so that violations
+     * are reported in a stable order.
+     */
+    private List<Artifact> getDependencyArtifacts()
+            throws MojoExecutionException {
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        for (Object object : resolveDependencies()) {
+            Artifact artifact = (Artifact) object;
+            if (!isDependencyIncluded(artifact.getGroupId())) {
+                continue;
+            }
+            File file = artifact.getFile();
+            // reactor siblings may resolve to output directories
+            if (file == null || !file.isFile() ||
+                    !file.getName().endsWith(".jar")) {
+                continue;
+            }
+            if (Artifact.SCOPE_TEST.equals(artifact.getScope()) &&
+                    !includeTestClasses) {
+                continue;
+            }
+            artifacts.add(artifact);
+        }
+        Collections.sort(artifacts, new Comparator<Artifact>() {
+            @Override
+            public int compare(Artifact a, Artifact b) {
+                return a.getId().compareTo(b.getId());
+            }
+        });
+        return artifacts;
+    }
+
+    /**
+     * Resolve the dependencies of the project transitively.  The goal does
+     * not require dependency resolution, which would resolve every module of
+     * a reactor even when dependencies are not scanned.
+     */
+    private Collection<?> resolveDependencies()
+            throws MojoExecutionException {
+        try {
+            Set<?> dependencyArtifacts = project.createArtifacts(
+                    artifactFactory, null, null);
+            ArtifactResolutionResult result;
+            synchronized (RESOLVER_LOCK) {
+                result = artifactResolver.resolveTransitively(
+                        dependencyArtifacts, project.getArtifact(),
+                        project.getManagedVersionMap(), localRepository,
+                        project.getRemoteArtifactRepositories(),
+                        artifactMetadataSource);
+            }
+            return result.getArtifacts();
+        } catch (InvalidDependencyVersionException idve) {
+            throw new MojoExecutionException(
+                    "Invalid dependency version", idve);
+        } catch (ArtifactResolutionException are) {
+            throw new MojoExecutionException(
+                    "Could not resolve dependencies", are);
+        } catch (ArtifactNotFoundException anfe) {
+            throw new MojoExecutionException(
+                    "Could not resolve dependencies", anfe);
+        }
+    }
+
+    private boolean isDependencyIncluded(String groupId) {
+        if (dependencyIncludes.isEmpty()) {
+            return true;
+        }
+        for (String include : dependencyIncludes) {
+            if (groupId.equals(include) ||
+                    groupId.startsWith(include + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check a dependency jar, omitting the classes this module ignores.
+     * Method ignores do not apply since they name methods of the module.
+     */
+    private Map<String, Collection<ViolationOccurrence>> checkArtifact(
+            Artifact artifact) throws IOException {
+        Map<String, Collection<ViolationOccurrence>> results =
+                new LinkedHashMap<String, Collection<ViolationOccurrence>>();
+        for (Map.Entry<String, Collection<ViolationOccurrence>> entry :
+                findArtifactOccurrences(artifact).entrySet()) {
+            String name = entry.getKey();
+            if (!modernizer.isClassIgnored(name.substring(0,
+                    name.length() - ".class".length()))) {
+                results.put(name, entry.getValue());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the occurrences in a dependency, from its index when there is
+     * a usable one, otherwise from its jar.  The producer of an index applied
+     * its own ignores, so those results are not cached, since the artifact
+     * cache holds occurrences found without ignores.
+     */
+    private Map<String, Collection<ViolationOccurrence>>
+            findArtifactOccurrences(Artifact artifact) throws IOException {
+        ScanIndex index = useDependencyIndexes && !artifact.isSnapshot() ?
+                resolveIndex(artifact) : null;
+        if (index != null) {
+            getLog().debug("Using scan index for " + artifact.getId());
+            return index.getOccurrences();
+        }
+        return scanArtifact(artifact);
+    }
+
+    /**
+     * Returns the occurrences in a dependency jar regardless of ignores,
+     * consulting the artifact cache first.  Released artifacts are immutable
+     * and trusted by coordinates while snapshots are revalidated by checksum.
+     */
+    private Map<String, Collection<ViolationOccurrence>> scanArtifact(
+            Artifact artifact) throws IOException {
+        File jar = artifact.getFile();
+        if (artifactCache == null) {
+            return checkJar(jar);
+        }
+        String coordinates = artifact.getId();
+        String checksum = artifact.isSnapshot() ?
+                ArtifactCache.checksum(jar) : null;
+        try {
+            Map<String, Collection<ViolationOccurrence>> results =
+                    artifactCache.get(coordinates, checksum);
+            if (results != null) {
+                return results;
+            }
+        } catch (IOException ioe) {
+            getLog().debug("Ignoring unreadable cache entry for " +
+                    coordinates, ioe);
+        }
+        Map<String, Collection<ViolationOccurrence>> results = checkJar(jar);
+        try {
+            artifactCache.put(coordinates, checksum != null ? checksum :
+                    ArtifactCache.checksum(jar), results);
+        } catch (IOException ioe) {
+            getLog().warn("Could not cache results for " + coordinates, ioe);
+        }
+        return results;
+    }
+
+    /**
+     * Resolve and read the index attached to the artifact, returning null if
+     * it does not exist or was produced under different rules.  Snapshots
+     * are not looked up since their index may lag behind the jar.
+     */
+    private ScanIndex resolveIndex(Artifact artifact) {
+        Artifact indexArtifact = artifactFactory.createArtifactWithClassifier(
+                artifact.getGroupId(), artifact.getArtifactId(),
+                artifact.getVersion(), ScanIndex.TYPE, ScanIndex.CLASSIFIER);
+        try {
+            synchronized (RESOLVER_LOCK) {
+                artifactResolver.resolve(indexArtifact,
+                        project.getRemoteArtifactRepositories(),
+                        localRepository);
+            }
+            return ScanIndex.read(indexArtifact.getFile(),
+                    modernizer.getRuleFingerprint(),
+                    modernizer.getViolations());
+        } catch (ArtifactNotFoundException anfe) {
+            getLog().debug("No scan index for " + artifact.getId());
+        } catch (ArtifactResolutionException are) {
+            getLog().debug("Could not resolve scan index for " +
+                    artifact.getId(), are);
+        } catch (IOException ioe) {
+            getLog().debug("Ignoring unreadable scan index for " +
+                    artifact.getId(), ioe);
+        }
+        return null;
+    }
+
+    /**
+     * Stream the classes of a jar without extracting it.  Returns the
+     * occurrences keyed by entry name for entries with violations, regardless
+     * of the ignores of this module.
+     */
+    private Map<String, Collection<ViolationOccurrence>> checkJar(File jar)
+            throws IOException {
+        Map<String, Collection<ViolationOccurrence>> results =
+                new LinkedHashMap<String, Collection<ViolationOccurrence>>();
+        Modernizer jarModernizer = modernizer.withoutIgnores();
+        ClassFileReader reader = ClassFileReader.forCurrentThread();
+        ZipInputStream zis = new ZipInputStream(new BufferedInputStream(
+                new FileInputStream(jar)));
+        try {
+            while (true) {
+                ZipEntry entry = zis.getNextEntry();
+                if (entry == null) {
+                    break;
+                }
+                String name = entry.getName();
+                // skip module descriptors and multi-release versions which
+                // target newer class file formats
+                if (entry.isDirectory() || !name.endsWith(".class") ||
+                        name.startsWith("META-INF/") ||
+                        name.endsWith("module-info.class")) {
+                    continue;
+                }
+                reader.read(zis, entry.getSize());
                 Collection<ViolationOccurrence> occurrences =
-                        modernizer.check(is);
-                for (ViolationOccurrence occurrence : occurrences) {
-                    String name = file.getPath();
-                    if (name.startsWith(outputDirectory.getPath())) {
-                        name = sourceDirectory.getPath() + name.substring(
-                                outputDirectory.getPath().length());
-                        name = name.substring(0,
-                                name.length() - ".class".length()) + ".java";
-                    } else if (name.startsWith(testOutputDirectory.getPath())) {
-                        name = testSourceDirectory.getPath() + name.substring(
-                                testOutputDirectory.getPath().length());
-                        name = name.substring(0,
-                                name.length() - ".class".length()) + ".java";
+                        jarModernizer.check(reader.getBuffer(), 0,
+                                reader.getLength());
+                if (!occurrences.isEmpty()) {
+                    results.put(name, occurrences);
+                }
+            }
+        } finally {
+            Utils.closeQuietly(zis);
+        }
+        return results;
+    }
+
+    private static <T> T getResult(Future<T> future)
+            throws IOException, MojoExecutionException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof MojoExecutionException) {
+                throw (MojoExecutionException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new MojoExecutionException("Unexpected error", cause);
+        }
+    }
+
+    private Collection<ViolationOccurrence> checkFile(File file)
+            throws IOException {
+        ClassFileReader reader = ClassFileReader.forCurrentThread();
+        reader.read(file);
+        byte[] bytes = reader.getBuffer();
+        int length = reader.getLength();
+        if (scanCache == null && classHashes == null) {
+            return modernizer.check(bytes, 0, length);
+        }
+        String hash = Utils.sha1Hex(bytes, 0, length);
+        if (classHashes != null) {
+            classHashes.put(file, hash);
+        }
+        if (scanCache == null) {
+            return modernizer.check(bytes, 0, length);
+        }
+        Collection<ViolationOccurrence> occurrences = scanCache.get(hash);
+        if (occurrences == null) {
+            occurrences = modernizer.check(bytes, 0, length);
+            scanCache.put(hash, occurrences);
+        }
+        return occurrences;
+    }
+
+    /**
+     * Stream the occurrences from the store in unit order, i.e., the classes
+     * followed by the dependency jars, and return the number which fail the
+     * build, i.e., those in dependencies only with
+     * failOnDependencyViolations.  Unless
+     * complete, artifacts without occurrences may not have been checked and
+     * are not reported.
+     */
+    private long emitViolations(OccurrenceStore store, List<File> files,
+            List<Artifact> artifacts, boolean complete) throws IOException {
+        long count = 0;
+        long artifactCount = 0;
+        // the next artifact to report, which artifactCount belongs to;
+        // artifacts without occurrences are reported as well
+        int nextArtifact = 0;
+        int currentUnit = -1;
+        String name = null;
+        OccurrenceStore.Cursor cursor = store.open();
+        try {
+            while (cursor.next()) {
+                int unit = cursor.getUnit();
+                if (unit < files.size()) {
+                    if (unit != currentUnit) {
+                        name = getSourceName(files.get(unit));
+                    }
+                } else {
+                    int artifact = unit - files.size();
+                    while (nextArtifact < artifact) {
+                        reportArtifact(artifacts.get(nextArtifact++),
+                                artifactCount, complete);
+                        artifactCount = 0;
                     }
-                    emitViolation(name, occurrence);
+                    name = artifacts.get(artifact).getId() + "!/" +
+                            cursor.getEntry();
+                    ++artifactCount;
+                }
+                currentUnit = unit;
+                emitViolation(name, cursor.getOccurrence());
+                if (unit < files.size() || failOnDependencyViolations) {
                     ++count;
                 }
-            } finally {
-                Utils.closeQuietly(is);
             }
+        } finally {
+            cursor.close();
+        }
+        while (nextArtifact < artifacts.size()) {
+            reportArtifact(artifacts.get(nextArtifact++), artifactCount,
+                    complete);
+            artifactCount = 0;
         }
         return count;
     }
 
+    /** Returns the source file of a class, or its path outside the roots. */
+    private String getSourceName(File file) {
+        String name = file.getPath();
+        if (name.startsWith(outputDirectory.getPath())) {
+            name = sourceDirectory.getPath() + name.substring(
+                    outputDirectory.getPath().length());
+            name = name.substring(0,
+                    name.length() - ".class".length()) + ".java";
+        } else if (name.startsWith(testOutputDirectory.getPath())) {
+            name = testSourceDirectory.getPath() + name.substring(
+                    testOutputDirectory.getPath().length());
+            name = name.substring(0,
+                    name.length() - ".class".length()) + ".java";
+        }
+        return name;
+    }
+
+    private void reportArtifact(Artifact artifact, long count,
+            boolean complete) {
+        if (count == 0 && !complete) {
+            return;
+        }
+        getLog().info("Found " + count + " violations in " +
+                artifact.getId());
+    }
+
     private void emitViolation(String name, ViolationOccurrence occurrence) {
         String message = name + ":" +
                 occurrence.getLineNumber() + ": " +
                 occurrence.getViolation().getComment();
+        if (messages != null) {
+            if (messages.size() < MAX_STAMP_MESSAGES) {
+                messages.add(message);
+            } else {
+                // replaying would not be worth holding every message
+                messages = null;
+            }
+        }
+        logViolation(message);
+    }
+
+    private void logViolation(String message) {
         if (violationLogLevel.equals("error")) {
             getLog().error(message);
         } else if (violationLogLevel.equals("warn")) {
@@ -383,4 +1593,16 @@ public final class ModernizerMojo extends AbstractMojo {
                     violationLogLevel);
         }
     }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                    "modernizer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
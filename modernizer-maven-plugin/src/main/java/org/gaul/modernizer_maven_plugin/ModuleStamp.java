@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the digest of the inputs of the last successful run of a module,
+ * i.e., its configuration, rules and the paths, sizes and modification times
+ * of its classes, along with the violation messages that run logged.  A
+ * later run with an equal digest replays the messages instead of loading
+ * the rules and scanning classes.
+ */
+final class ModuleStamp {
+    private static final int FORMAT_VERSION = 1;
+
+    private ModuleStamp() { }
+
+    /**
+     * Returns the digest of a run from its configuration, e.g., the engine
+     * key, plugin and options, and the paths, sizes and modification times
+     * of the classes and dependency jars, keyed by id, it scans.
+     */
+    static String compute(List<String> configuration, List<File> files,
+            Map<String, File> artifacts) {
+        MessageDigest digest = Utils.newSha1();
+        for (String line : configuration) {
+            update(digest, line);
+        }
+        for (File file : files) {
+            update(digest, "class " + describeFile(file));
+        }
+        for (Map.Entry<String, File> entry : artifacts.entrySet()) {
+            update(digest, "artifact " + entry.getKey() + " " +
+                    describeFile(entry.getValue()));
+        }
+        return Utils.toHex(digest.digest());
+    }
+
+    static String describeFile(File file) {
+        return file.getPath() + " " + file.length() + " " +
+                file.lastModified();
+    }
+
+    private static void update(MessageDigest digest, String line) {
+        digest.update((line + "\n").getBytes(Utils.UTF_8));
+    }
+
+    /**
+     * Returns the messages recorded in file, or null if the file does not
+     * exist or was written for a different digest.
+     */
+    static List<String> read(File file, String digest) throws IOException {
+        DataInputStream in = DataFiles.open(file, FORMAT_VERSION, digest);
+        if (in == null) {
+            return null;
+        }
+        try {
+            int size = in.readInt();
+            List<String> messages = new ArrayList<String>(size);
+            for (int i = 0; i < size; ++i) {
+                messages.add(in.readUTF());
+            }
+            return messages;
+        } finally {
+            Utils.closeQuietly(in);
+        }
+    }
+
+    static void write(File file, String digest, final List<String> messages)
+            throws IOException {
+        DataFiles.write(file, FORMAT_VERSION, digest,
+                new DataFiles.Contents() {
+                    @Override
+                    public void write(DataOutputStream out)
+                            throws IOException {
+                        out.writeInt(messages.size());
+                        for (String message : messages) {
+                            out.writeUTF(message);
+                        }
+                    }
+                });
+    }
+}
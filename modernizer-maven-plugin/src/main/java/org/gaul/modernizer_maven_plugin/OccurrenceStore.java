@@ -0,0 +1,399 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the occurrences of a run in columns of ints: the unit, i.e., the
+ * class file or dependency jar, an optional jar entry, the occurrence name,
+ * the violation and the line number.  Strings and violations are interned
+ * so that each occurrence takes 20 bytes.  When the columns exceed the heap
+ * budget they are sorted by unit and spilled to a temporary file, and the
+ * cursor merges the spilled runs back in unit order.  Each unit is added at
+ * once and thus lives in a single run, which preserves the order of its
+ * occurrences.  Adding is thread-safe; once the store is opened for
+ * reading, later additions, e.g., from cancelled tasks, are discarded.
+ */
+final class OccurrenceStore implements Closeable {
+    private static final int BYTES_PER_OCCURRENCE = 5 * 4;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int NO_ENTRY = -1;
+
+    private final long heapBudget;
+    private final File directory;
+    private final Map<String, Integer> stringIds =
+            new HashMap<String, Integer>();
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<Violation, Integer> violationIds =
+            new IdentityHashMap<Violation, Integer>();
+    private final List<Violation> violations = new ArrayList<Violation>();
+    private final List<File> runs = new ArrayList<File>();
+    /** Start of each unit in the columns, in the order they were added. */
+    private final List<int[]> blocks = new ArrayList<int[]>();
+    private int[] units = new int[INITIAL_CAPACITY];
+    private int[] entries = new int[INITIAL_CAPACITY];
+    private int[] names = new int[INITIAL_CAPACITY];
+    private int[] rules = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int size;
+    private long count;
+    private boolean sealed;
+
+    /**
+     * Creates a store which keeps at most heapBudget bytes of occurrences in
+     * memory and spills the rest to temporary files in directory.
+     */
+    OccurrenceStore(long heapBudget, File directory) {
+        Utils.checkArgument(heapBudget >= BYTES_PER_OCCURRENCE);
+        this.heapBudget = heapBudget;
+        this.directory = Utils.checkNotNull(directory);
+    }
+
+    /** Add the occurrences of a class file. */
+    synchronized void add(int unit, Collection<ViolationOccurrence> occurrences)
+            throws IOException {
+        if (sealed || occurrences.isEmpty()) {
+            return;
+        }
+        int start = size;
+        append(unit, NO_ENTRY, occurrences);
+        endUnit(unit, start);
+    }
+
+    /** Add the occurrences of a jar keyed by entry name. */
+    synchronized void add(int unit,
+            Map<String, Collection<ViolationOccurrence>> occurrences)
+            throws IOException {
+        if (sealed) {
+            return;
+        }
+        int start = size;
+        for (Map.Entry<String, Collection<ViolationOccurrence>> entry :
+                occurrences.entrySet()) {
+            append(unit, intern(entry.getKey()), entry.getValue());
+        }
+        if (size != start) {
+            endUnit(unit, start);
+        }
+    }
+
+    /** Returns the number of occurrences added. */
+    synchronized long size() {
+        return count;
+    }
+
+    /** Returns whether occurrences were spilled to disk. */
+    synchronized boolean hasSpilled() {
+        return !runs.isEmpty();
+    }
+
+    /**
+     * Returns a cursor over every occurrence ordered by unit.  Occurrences
+     * added afterwards are discarded.
+     */
+    synchronized Cursor open() throws IOException {
+        sealed = true;
+        List<RunReader> readers = new ArrayList<RunReader>(runs.size() + 1);
+        try {
+            for (File run : runs) {
+                readers.add(new FileRunReader(run));
+            }
+        } catch (IOException ioe) {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+            throw ioe;
+        }
+        readers.add(new MemoryRunReader(sortedBlocks()));
+        return new Cursor(readers);
+    }
+
+    /** Delete the spilled runs. */
+    @Override
+    public synchronized void close() {
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    private void append(int unit, int entry,
+            Collection<ViolationOccurrence> occurrences) {
+        ensureCapacity(size + occurrences.size());
+        for (ViolationOccurrence occurrence : occurrences) {
+            units[size] = unit;
+            entries[size] = entry;
+            names[size] = intern(occurrence.getOwner());
+            rules[size] = intern(occurrence.getViolation());
+            lines[size] = occurrence.getLineNumber();
+            ++size;
+            ++count;
+        }
+    }
+
+    private void endUnit(int unit, int start) throws IOException {
+        blocks.add(new int[] {unit, start, size - start});
+        if ((long) size * BYTES_PER_OCCURRENCE > heapBudget) {
+            spill();
+        }
+    }
+
+    private void spill() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs() &&
+                !directory.isDirectory()) {
+            throw new IOException("Could not create directory: " + directory);
+        }
+        File run = File.createTempFile("occurrences", ".run", directory);
+        run.deleteOnExit();
+        runs.add(run);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(run)));
+        try {
+            for (int[] block : sortedBlocks()) {
+                for (int i = block[1]; i < block[1] + block[2]; ++i) {
+                    out.writeInt(units[i]);
+                    out.writeInt(entries[i]);
+                    out.writeInt(names[i]);
+                    out.writeInt(rules[i]);
+                    out.writeInt(lines[i]);
+                }
+            }
+            out.flush();
+        } finally {
+            Utils.closeQuietly(out);
+        }
+        blocks.clear();
+        size = 0;
+        // release columns which grew for an unusually large unit
+        if (units.length > heapBudget / BYTES_PER_OCCURRENCE) {
+            allocate(INITIAL_CAPACITY);
+        }
+    }
+
+    private List<int[]> sortedBlocks() {
+        List<int[]> sorted = new ArrayList<int[]>(blocks);
+        Collections.sort(sorted, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+            }
+        });
+        return sorted;
+    }
+
+    private int intern(String string) {
+        Integer id = stringIds.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.add(string);
+            stringIds.put(string, id);
+        }
+        return id;
+    }
+
+    private int intern(Violation violation) {
+        Integer id = violationIds.get(violation);
+        if (id == null) {
+            id = violations.size();
+            violations.add(violation);
+            violationIds.put(violation, id);
+        }
+        return id;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= units.length) {
+            return;
+        }
+        int newCapacity = units.length;
+        while (newCapacity < capacity) {
+            newCapacity <<= 1;
+        }
+        units = Arrays.copyOf(units, newCapacity);
+        entries = Arrays.copyOf(entries, newCapacity);
+        names = Arrays.copyOf(names, newCapacity);
+        rules = Arrays.copyOf(rules, newCapacity);
+        lines = Arrays.copyOf(lines, newCapacity);
+    }
+
+    private void allocate(int capacity) {
+        units = new int[capacity];
+        entries = new int[capacity];
+        names = new int[capacity];
+        rules = new int[capacity];
+        lines = new int[capacity];
+    }
+
+    /** Streams the occurrences of the store in unit order. */
+    final class Cursor implements Closeable {
+        private final List<RunReader> readers;
+        private RunReader current;
+
+        private Cursor(List<RunReader> readers) {
+            this.readers = readers;
+        }
+
+        /** Advance to the next occurrence, returning false at the end. */
+        boolean next() throws IOException {
+            if (current != null) {
+                current.advance();
+            }
+            current = null;
+            for (RunReader reader : readers) {
+                if (reader.hasCurrent() && (current == null ||
+                        reader.unit < current.unit)) {
+                    current = reader;
+                }
+            }
+            return current != null;
+        }
+
+        int getUnit() {
+            return current.unit;
+        }
+
+        /** Returns the jar entry name, or null for class files. */
+        String getEntry() {
+            return current.entry == NO_ENTRY ? null :
+                    strings.get(current.entry);
+        }
+
+        ViolationOccurrence getOccurrence() {
+            return new ViolationOccurrence(strings.get(current.name),
+                    current.line, violations.get(current.rule));
+        }
+
+        @Override
+        public void close() {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private abstract static class RunReader {
+        private int unit;
+        private int entry;
+        private int name;
+        private int rule;
+        private int line;
+        private boolean started;
+        private boolean exhausted;
+
+        final boolean hasCurrent() throws IOException {
+            if (!started) {
+                started = true;
+                advance();
+            }
+            return !exhausted;
+        }
+
+        final void advance() throws IOException {
+            exhausted = !read();
+        }
+
+        /** Read the next occurrence with set, returning false at the end. */
+        abstract boolean read() throws IOException;
+
+        final void set(int newUnit, int newEntry, int newName, int newRule,
+                int newLine) {
+            unit = newUnit;
+            entry = newEntry;
+            name = newName;
+            rule = newRule;
+            line = newLine;
+        }
+
+        void close() {
+        }
+    }
+
+    private final class MemoryRunReader extends RunReader {
+        private final List<int[]> sortedBlocks;
+        private int block;
+        private int index = -1;
+
+        MemoryRunReader(List<int[]> sortedBlocks) {
+            this.sortedBlocks = sortedBlocks;
+        }
+
+        @Override
+        boolean read() {
+            while (block < sortedBlocks.size()) {
+                int[] current = sortedBlocks.get(block);
+                if (index == -1) {
+                    index = current[1];
+                }
+                if (index < current[1] + current[2]) {
+                    set(units[index], entries[index], names[index],
+                            rules[index], lines[index]);
+                    ++index;
+                    return true;
+                }
+                ++block;
+                index = -1;
+            }
+            return false;
+        }
+    }
+
+    private static final class FileRunReader extends RunReader {
+        private final DataInputStream in;
+
+        FileRunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(run)));
+        }
+
+        @Override
+        boolean read() throws IOException {
+            int unit;
+            try {
+                unit = in.readInt();
+            } catch (EOFException eofe) {
+                return false;
+            }
+            set(unit, in.readInt(), in.readInt(), in.readInt(),
+                    in.readInt());
+            return true;
+        }
+
+        @Override
+        void close() {
+            Utils.closeQuietly(in);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Character trie of ignored package prefixes.  Ignoring foo.bar ignores
+ * classes in foo.bar, foo.bar.baz and so on, but not in foo.barbaz.  Lookups
+ * walk the package part of an internal class name once and do not allocate.
+ */
+final class PackageTrie {
+    private final Node root = new Node();
+
+    PackageTrie(Collection<String> packages) {
+        for (String packageName : packages) {
+            Node node = root;
+            for (int i = 0; i < packageName.length(); ++i) {
+                node = node.getOrCreate(packageName.charAt(i));
+            }
+            node.terminal = true;
+        }
+    }
+
+    /**
+     * Returns true if the package of the class, given by its internal name,
+     * e.g., foo/bar/Baz, is one of the packages or a subpackage of one.
+     */
+    boolean containsPackageOf(String className) {
+        int end = className.lastIndexOf('/');
+        Node node = root;
+        for (int i = 0; i < end; ++i) {
+            char c = className.charAt(i);
+            if (c == '/') {
+                if (node.terminal) {
+                    return true;
+                }
+                c = '.';
+            }
+            node = node.get(c);
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.terminal;
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+
+        Node get(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : children[index];
+        }
+
+        Node getOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insert = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            System.arraycopy(keys, insert, newKeys, insert + 1,
+                    keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1,
+                    children.length - insert);
+            Node node = new Node();
+            newKeys[insert] = c;
+            newChildren[insert] = node;
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+    }
+}
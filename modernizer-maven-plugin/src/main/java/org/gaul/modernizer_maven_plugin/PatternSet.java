@@ -0,0 +1,479 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Answers whether any of a set of regular expressions fully matches an
+ * input.  Patterns are compiled into a single Thompson NFA which is
+ * simulated in one pass over the input, so matching takes time linear in
+ * the input length regardless of how the patterns are written.  The NFA
+ * supports literals, '.', character classes, the \d \s \w escapes,
+ * groups, alternation and the '*', '+' and '?' quantifiers.  Patterns using
+ * anything else, e.g., anchors, bounded repetition, backreferences,
+ * lookaround or flags, fall back to java.util.regex.
+ */
+final class PatternSet {
+    private static final int CHARS = 0;
+    private static final int SPLIT = 1;
+    private static final int MATCH = 2;
+
+    /** Characters which '.' does not match without DOTALL. */
+    private static final char[] LINE_TERMINATORS = {
+        '\n', '\n', '\r', '\r', '\u0085', '\u0085', '\u2028', '\u2029'
+    };
+    private static final char[] DIGIT = {'0', '9'};
+    private static final char[] SPACE = {
+        ' ', ' ', '\t', '\n', '\u000B', '\u000B', '\f', '\r'
+    };
+    private static final char[] WORD = {
+        'a', 'z', 'A', 'Z', '_', '_', '0', '9'
+    };
+
+    private final List<Pattern> patterns = new ArrayList<Pattern>();
+    private final List<Pattern> fallbackPatterns = new ArrayList<Pattern>();
+    private final List<State> states = new ArrayList<State>();
+    private final int[] starts;
+
+    PatternSet(Collection<Pattern> patterns) {
+        List<Integer> startList = new ArrayList<Integer>();
+        for (Pattern pattern : patterns) {
+            this.patterns.add(pattern);
+            Node node = pattern.flags() == 0 ?
+                    new Parser(pattern.pattern()).parse() : null;
+            if (node == null) {
+                fallbackPatterns.add(pattern);
+                continue;
+            }
+            startList.add(compile(node, addState(MATCH, null, false)));
+        }
+        starts = new int[startList.size()];
+        for (int i = 0; i < starts.length; ++i) {
+            starts[i] = startList.get(i);
+        }
+    }
+
+    boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /** Returns true if any pattern matches the entire input. */
+    boolean matchesAny(CharSequence input) {
+        for (int i = 0; i < input.length(); ++i) {
+            if (Character.isSurrogate(input.charAt(i))) {
+                // the NFA matches chars, not code points
+                return matchesAny(patterns, input);
+            }
+        }
+        return (starts.length != 0 && simulate(input)) ||
+                matchesAny(fallbackPatterns, input);
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns,
+            CharSequence input) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(input).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean simulate(CharSequence input) {
+        int size = states.size();
+        int[] current = new int[size];
+        int[] next = new int[size];
+        int[] marks = new int[size];
+        int generation = 1;
+        int count = 0;
+        for (int start : starts) {
+            count = addState(current, count, start, marks, generation);
+        }
+        for (int i = 0; i < input.length() && count != 0; ++i) {
+            char c = input.charAt(i);
+            ++generation;
+            int nextCount = 0;
+            for (int j = 0; j < count; ++j) {
+                State state = states.get(current[j]);
+                if (state.type == CHARS && state.matches(c)) {
+                    nextCount = addState(next, nextCount, state.out, marks,
+                            generation);
+                }
+            }
+            int[] tmp = current;
+            current = next;
+            next = tmp;
+            count = nextCount;
+        }
+        for (int j = 0; j < count; ++j) {
+            if (states.get(current[j]).type == MATCH) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Add a state and everything reachable through SPLITs to the list. */
+    private int addState(int[] list, int count, int index, int[] marks,
+            int generation) {
+        if (marks[index] == generation) {
+            return count;
+        }
+        marks[index] = generation;
+        State state = states.get(index);
+        if (state.type == SPLIT) {
+            count = addState(list, count, state.out, marks, generation);
+            return addState(list, count, state.out1, marks, generation);
+        }
+        list[count] = index;
+        return count + 1;
+    }
+
+    private int addState(int type, char[] ranges, boolean negated) {
+        states.add(new State(type, ranges, negated));
+        return states.size() - 1;
+    }
+
+    /** Compile node so that it continues at state next; returns its start. */
+    private int compile(Node node, int next) {
+        switch (node.type) {
+        case Node.CHARS:
+            int chars = addState(CHARS, node.ranges, node.negated);
+            states.get(chars).out = next;
+            return chars;
+        case Node.CONCAT:
+            int start = next;
+            for (int i = node.children.size() - 1; i >= 0; --i) {
+                start = compile(node.children.get(i), start);
+            }
+            return start;
+        case Node.ALTERNATE:
+            int alternate = compile(node.children.get(0), next);
+            for (int i = 1; i < node.children.size(); ++i) {
+                int split = addState(SPLIT, null, false);
+                states.get(split).out = alternate;
+                states.get(split).out1 = compile(node.children.get(i), next);
+                alternate = split;
+            }
+            return alternate;
+        case Node.STAR:
+            int loop = addState(SPLIT, null, false);
+            states.get(loop).out1 = next;
+            states.get(loop).out = compile(node.children.get(0), loop);
+            return loop;
+        case Node.PLUS:
+            int repeat = addState(SPLIT, null, false);
+            states.get(repeat).out1 = next;
+            int body = compile(node.children.get(0), repeat);
+            states.get(repeat).out = body;
+            return body;
+        case Node.OPTIONAL:
+            int optional = addState(SPLIT, null, false);
+            states.get(optional).out1 = next;
+            states.get(optional).out = compile(node.children.get(0), next);
+            return optional;
+        default:
+            throw new IllegalStateException("unexpected node: " + node.type);
+        }
+    }
+
+    private static final class State {
+        private final int type;
+        private final char[] ranges;
+        private final boolean negated;
+        private int out = -1;
+        private int out1 = -1;
+
+        State(int type, char[] ranges, boolean negated) {
+            this.type = type;
+            this.ranges = ranges;
+            this.negated = negated;
+        }
+
+        boolean matches(char c) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (c >= ranges[i] && c <= ranges[i + 1]) {
+                    return !negated;
+                }
+            }
+            return negated;
+        }
+    }
+
+    private static final class Node {
+        static final int CHARS = 0;
+        static final int CONCAT = 1;
+        static final int ALTERNATE = 2;
+        static final int STAR = 3;
+        static final int PLUS = 4;
+        static final int OPTIONAL = 5;
+
+        private final int type;
+        private final List<Node> children = new ArrayList<Node>();
+        private char[] ranges;
+        private boolean negated;
+
+        Node(int type) {
+            this.type = type;
+        }
+
+        static Node chars(char[] ranges, boolean negated) {
+            Node node = new Node(CHARS);
+            node.ranges = ranges;
+            node.negated = negated;
+            return node;
+        }
+
+        static Node unary(int type, Node child) {
+            Node node = new Node(type);
+            node.children.add(child);
+            return node;
+        }
+    }
+
+    /**
+     * Recursive descent parser for the supported subset of the
+     * java.util.regex syntax.  Returns null for anything unsupported.
+     */
+    private static final class Parser {
+        private final String pattern;
+        private int pos;
+
+        Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        Node parse() {
+            Node node = parseAlternate();
+            return node != null && pos == pattern.length() ? node : null;
+        }
+
+        private Node parseAlternate() {
+            Node node = new Node(Node.ALTERNATE);
+            while (true) {
+                Node concat = parseConcat();
+                if (concat == null) {
+                    return null;
+                }
+                node.children.add(concat);
+                if (pos < pattern.length() && pattern.charAt(pos) == '|') {
+                    ++pos;
+                } else {
+                    break;
+                }
+            }
+            return node.children.size() == 1 ? node.children.get(0) : node;
+        }
+
+        private Node parseConcat() {
+            Node node = new Node(Node.CONCAT);
+            while (pos < pattern.length()) {
+                char c = pattern.charAt(pos);
+                if (c == '|' || c == ')') {
+                    break;
+                }
+                Node atom = parseAtom();
+                if (atom == null) {
+                    return null;
+                }
+                atom = parseQuantifiers(atom);
+                if (atom == null) {
+                    return null;
+                }
+                node.children.add(atom);
+            }
+            return node;
+        }
+
+        private Node parseQuantifiers(Node atom) {
+            while (pos < pattern.length()) {
+                char c = pattern.charAt(pos);
+                int type;
+                if (c == '*') {
+                    type = Node.STAR;
+                } else if (c == '+') {
+                    type = Node.PLUS;
+                } else if (c == '?') {
+                    type = Node.OPTIONAL;
+                } else if (c == '{') {
+                    return null;
+                } else {
+                    break;
+                }
+                ++pos;
+                if (pos < pattern.length()) {
+                    char modifier = pattern.charAt(pos);
+                    if (modifier == '?') {
+                        // reluctant quantifiers match the same inputs
+                        ++pos;
+                    } else if (modifier == '+') {
+                        // possessive quantifiers can reject inputs
+                        return null;
+                    }
+                }
+                atom = Node.unary(type, atom);
+            }
+            return atom;
+        }
+
+        private Node parseAtom() {
+            char c = pattern.charAt(pos++);
+            switch (c) {
+            case '(':
+                if (pattern.startsWith("?:", pos)) {
+                    pos += 2;
+                } else if (pos < pattern.length() &&
+                        pattern.charAt(pos) == '?') {
+                    return null;
+                }
+                Node group = parseAlternate();
+                if (group == null || pos >= pattern.length() ||
+                        pattern.charAt(pos) != ')') {
+                    return null;
+                }
+                ++pos;
+                return group;
+            case '[':
+                return parseClass();
+            case '.':
+                return Node.chars(LINE_TERMINATORS, true);
+            case '\\':
+                return parseEscape();
+            case '^':
+            case '$':
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+            case ')':
+                return null;
+            default:
+                return Node.chars(new char[] {c, c}, false);
+            }
+        }
+
+        private Node parseEscape() {
+            if (pos >= pattern.length()) {
+                return null;
+            }
+            char c = pattern.charAt(pos++);
+            switch (c) {
+            case 'd':
+                return Node.chars(DIGIT, false);
+            case 'D':
+                return Node.chars(DIGIT, true);
+            case 's':
+                return Node.chars(SPACE, false);
+            case 'S':
+                return Node.chars(SPACE, true);
+            case 'w':
+                return Node.chars(WORD, false);
+            case 'W':
+                return Node.chars(WORD, true);
+            default:
+                char literal = parseEscapedLiteral(c);
+                return literal == 0 ? null :
+                        Node.chars(new char[] {literal, literal}, false);
+            }
+        }
+
+        private Node parseClass() {
+            boolean negated = false;
+            if (pos < pattern.length() && pattern.charAt(pos) == '^') {
+                negated = true;
+                ++pos;
+            }
+            StringBuilder ranges = new StringBuilder();
+            boolean first = true;
+            while (true) {
+                if (pos >= pattern.length()) {
+                    return null;
+                }
+                char c = pattern.charAt(pos++);
+                if (c == ']' && !first) {
+                    break;
+                } else if (c == '[' || c == ']' ||
+                        (c == '&' && pattern.startsWith("&", pos))) {
+                    return null;
+                } else if (c == '\\') {
+                    if (pos >= pattern.length()) {
+                        return null;
+                    }
+                    char escaped = pattern.charAt(pos++);
+                    char[] predefined = getPredefinedClass(escaped);
+                    if (predefined != null) {
+                        ranges.append(predefined);
+                        first = false;
+                        continue;
+                    }
+                    c = parseEscapedLiteral(escaped);
+                    if (c == 0) {
+                        return null;
+                    }
+                }
+                first = false;
+                char high = c;
+                if (pos + 1 < pattern.length() && pattern.charAt(pos) == '-' &&
+                        pattern.charAt(pos + 1) != ']') {
+                    high = pattern.charAt(pos + 1);
+                    if (high == '\\' || high == '[' || high < c) {
+                        return null;
+                    }
+                    pos += 2;
+                }
+                ranges.append(c).append(high);
+            }
+            char[] array = new char[ranges.length()];
+            ranges.getChars(0, array.length, array, 0);
+            return Node.chars(array, negated);
+        }
+
+        /** Returns the escaped literal or 0 if the escape is unsupported. */
+        private static char parseEscapedLiteral(char c) {
+            switch (c) {
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            default:
+                // \Q, \b, \p, backreferences and the like are unsupported
+                return Character.isLetterOrDigit(c) || c > 127 ? 0 : c;
+            }
+        }
+
+        private static char[] getPredefinedClass(char c) {
+            switch (c) {
+            case 'd':
+                return DIGIT;
+            case 's':
+                return SPACE;
+            case 'w':
+                return WORD;
+            default:
+                return null;
+            }
+        }
+    }
+}
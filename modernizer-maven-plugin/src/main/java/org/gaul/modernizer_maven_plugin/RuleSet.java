@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable set of violations which apply to a target Java version, with
+ * exclusions and exclusion patterns already removed.  Any violation found in
+ * the index is reportable unless the class or method is ignored.
+ */
+final class RuleSet {
+    private final Map<String, Violation> violations;
+    private final ViolationIndex index;
+    private final ConstantPoolFilter constantPoolFilter;
+
+    RuleSet(long javaVersion, Map<String, Violation> violations,
+            Collection<String> exclusions,
+            Collection<Pattern> exclusionPatterns) {
+        PatternSet excluded = new PatternSet(exclusionPatterns);
+        Map<String, Violation> applicable = new HashMap<String, Violation>();
+        for (Map.Entry<String, Violation> entry : violations.entrySet()) {
+            String token = entry.getKey();
+            Violation violation = entry.getValue();
+            if (javaVersion >= violation.getVersion() &&
+                    !exclusions.contains(token) &&
+                    !excluded.matchesAny(token)) {
+                applicable.put(token, violation);
+            }
+        }
+        this.violations = Utils.createImmutableMap(applicable);
+        this.index = new ViolationIndex(applicable);
+        this.constantPoolFilter = new ConstantPoolFilter(index.getOwners());
+    }
+
+    /** Returns the applicable violations keyed by name. */
+    Map<String, Violation> getViolations() {
+        return violations;
+    }
+
+    ViolationIndex getIndex() {
+        return index;
+    }
+
+    ConstantPoolFilter getConstantPoolFilter() {
+        return constantPoolFilter;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps the SHA-1 of class file contents to the occurrences Modernizer found
+ * in it.  A cache is only valid for the rule set fingerprint it was written
+ * with; loading a cache with a different fingerprint yields an empty cache.
+ * Occurrences stay on disk: loading only indexes the offset of each entry
+ * in the previous file, and entries which are used or added are appended
+ * to a journal next to it, which replaces the previous file when saved.
+ * Thus saving only retains entries which were used or added since loading,
+ * and memory grows with the number of classes rather than occurrences.
+ * Entries which cannot be decoded are treated as misses.
+ */
+final class ScanCache implements Closeable {
+    private static final int FORMAT_VERSION = 2;
+
+    private final File file;
+    private final String fingerprint;
+    private final Map<String, Violation> violations;
+    /** Offset and length of each entry of the previous file by hash. */
+    private final Map<String, long[]> previous = new HashMap<String, long[]>();
+    /** Hashes of the entries in the journal. */
+    private final Set<String> current = new HashSet<String>();
+    private RandomAccessFile previousFile;
+    private File journalFile;
+    private DataOutputStream journal;
+    private IOException journalError;
+
+    private ScanCache(File file, String fingerprint,
+            Map<String, Violation> violations) {
+        this.file = Utils.checkNotNull(file);
+        this.fingerprint = Utils.checkNotNull(fingerprint);
+        this.violations = Utils.checkNotNull(violations);
+    }
+
+    /** Create an empty cache which will be saved to file. */
+    static ScanCache create(File file, String fingerprint,
+            Map<String, Violation> violations) {
+        return new ScanCache(file, fingerprint, violations);
+    }
+
+    /**
+     * Load the cache stored in file.  Returns an empty cache if the file does
+     * not exist or was written for a different rule set.
+     */
+    static ScanCache load(File file, String fingerprint,
+            Map<String, Violation> violations) throws IOException {
+        ScanCache cache = new ScanCache(file, fingerprint, violations);
+        DataInputStream in = DataFiles.open(file, FORMAT_VERSION,
+                fingerprint);
+        if (in == null) {
+            return cache;
+        }
+        try {
+            // fingerprints and hashes are hexadecimal, so that their modified
+            // UTF-8 encodings take one byte per character after the length
+            long offset = 4 + 2 + fingerprint.length();
+            while (true) {
+                String hash;
+                try {
+                    hash = in.readUTF();
+                } catch (EOFException eofe) {
+                    break;
+                }
+                int length = in.readInt();
+                offset += 2 + hash.length() + 4;
+                cache.previous.put(hash, new long[] {offset, length});
+                skipFully(in, length);
+                offset += length;
+            }
+        } finally {
+            Utils.closeQuietly(in);
+        }
+        cache.previousFile = new RandomAccessFile(file, "r");
+        return cache;
+    }
+
+    /** Returns the cached occurrences for a class, or null on a miss. */
+    Collection<ViolationOccurrence> get(String hash) {
+        byte[] bytes;
+        synchronized (this) {
+            long[] location = previous.get(hash);
+            if (location == null) {
+                return null;
+            }
+            bytes = new byte[(int) location[1]];
+            try {
+                previousFile.seek(location[0]);
+                previousFile.readFully(bytes);
+            } catch (IOException ioe) {
+                return null;
+            }
+        }
+        Collection<ViolationOccurrence> occurrences;
+        try {
+            occurrences = DataFiles.readOccurrences(new DataInputStream(
+                    new ByteArrayInputStream(bytes)), violations);
+        } catch (IOException ioe) {
+            return null;
+        }
+        append(hash, bytes);
+        return occurrences;
+    }
+
+    void put(String hash, Collection<ViolationOccurrence> occurrences) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataFiles.writeOccurrences(new DataOutputStream(bytes),
+                    occurrences);
+        } catch (IOException ioe) {
+            throw new AssertionError(ioe);
+        }
+        append(hash, bytes.toByteArray());
+    }
+
+    /**
+     * Record an entry in the journal.  Errors are reported when saving, so
+     * that a full disk only loses the cache rather than failing the scan.
+     */
+    private synchronized void append(String hash, byte[] bytes) {
+        if (journalError != null || !current.add(hash)) {
+            return;
+        }
+        try {
+            openJournal();
+            journal.writeUTF(hash);
+            journal.writeInt(bytes.length);
+            journal.write(bytes);
+        } catch (IOException ioe) {
+            journalError = ioe;
+            Utils.closeQuietly(journal);
+        }
+    }
+
+    private void openJournal() throws IOException {
+        if (journal == null) {
+            journalFile = DataFiles.createTempFile(file);
+            journal = DataFiles.create(journalFile, FORMAT_VERSION,
+                    fingerprint);
+        }
+    }
+
+    /** Replace the file with the entries used or added since loading. */
+    synchronized void save() throws IOException {
+        if (journalError != null) {
+            throw journalError;
+        }
+        openJournal();
+        journal.close();
+        // some platforms cannot replace a file which is still open
+        Utils.closeQuietly(previousFile);
+        DataFiles.replace(journalFile, file);
+        journalFile = null;
+    }
+
+    /** Close the files and delete the journal unless it was saved. */
+    @Override
+    public synchronized void close() {
+        Utils.closeQuietly(journal);
+        Utils.closeQuietly(previousFile);
+        if (journalFile != null) {
+            journalFile.delete();
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int length)
+            throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException("Truncated scan cache");
+            }
+            remaining -= skipped;
+        }
+    }
+}
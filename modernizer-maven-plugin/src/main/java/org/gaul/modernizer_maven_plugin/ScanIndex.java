@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Index of the occurrences in the classes of a module, published as an
+ * attached artifact next to its jar.  Consumers which scan dependencies read
+ * the index instead of the classes when it was produced under the same rule
+ * fingerprint.  The index records the SHA-1 of every class, with or without
+ * occurrences, keyed by jar entry name, e.g., org/gaul/Foo.class.
+ */
+final class ScanIndex {
+    static final String CLASSIFIER = "modernizer-index";
+    static final String TYPE = "bin";
+
+    private static final int FORMAT_VERSION = 2;
+
+    private final String fingerprint;
+    private final SortedMap<String, String> classHashes =
+            new TreeMap<String, String>();
+    private final SortedMap<String, Collection<ViolationOccurrence>>
+            occurrences =
+            new TreeMap<String, Collection<ViolationOccurrence>>();
+
+    ScanIndex(String fingerprint) {
+        this.fingerprint = Utils.checkNotNull(fingerprint);
+    }
+
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    /** Add a class; safe to call from concurrent scanning threads. */
+    synchronized void add(String name, String hash,
+            Collection<ViolationOccurrence> classOccurrences) {
+        classHashes.put(name, Utils.checkNotNull(hash));
+        if (!classOccurrences.isEmpty()) {
+            occurrences.put(name, classOccurrences);
+        }
+    }
+
+    /** Returns the SHA-1 of each class by entry name. */
+    Map<String, String> getClassHashes() {
+        return Collections.unmodifiableMap(classHashes);
+    }
+
+    /** Returns the occurrences by entry name for classes which have any. */
+    Map<String, Collection<ViolationOccurrence>> getOccurrences() {
+        return Collections.unmodifiableMap(occurrences);
+    }
+
+    /** Write the index, replacing file only once it is complete. */
+    void write(File file) throws IOException {
+        DataFiles.write(file, FORMAT_VERSION, fingerprint,
+                new DataFiles.Contents() {
+                    @Override
+                    public void write(DataOutputStream out)
+                            throws IOException {
+                        writeEntries(out);
+                    }
+                });
+    }
+
+    private void writeEntries(DataOutputStream out) throws IOException {
+        out.writeInt(classHashes.size());
+        for (Map.Entry<String, String> entry : classHashes.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+            Collection<ViolationOccurrence> classOccurrences =
+                    occurrences.get(entry.getKey());
+            DataFiles.writeOccurrences(out, classOccurrences != null ?
+                    classOccurrences :
+                    Collections.<ViolationOccurrence>emptyList());
+        }
+    }
+
+    /**
+     * Read an index, returning null if it was produced by another version of
+     * the plugin or under a different fingerprint.
+     */
+    static ScanIndex read(File file, String fingerprint,
+            Map<String, Violation> violations) throws IOException {
+        DataInputStream in = DataFiles.open(file, FORMAT_VERSION,
+                fingerprint);
+        if (in == null) {
+            return null;
+        }
+        try {
+            ScanIndex index = new ScanIndex(fingerprint);
+            int size = in.readInt();
+            for (int i = 0; i < size; ++i) {
+                String name = in.readUTF();
+                String hash = in.readUTF();
+                index.add(name, hash,
+                        DataFiles.readOccurrences(in, violations));
+            }
+            return index;
+        } finally {
+            Utils.closeQuietly(in);
+        }
+    }
+}
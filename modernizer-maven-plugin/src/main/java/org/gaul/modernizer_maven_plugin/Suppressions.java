@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Ignored packages, class name patterns, classes and methods.  The lookup
+ * structures are built on first use, i.e., when a class produces its first
+ * candidate violation, so that clean modules never pay for them.  Safe for
+ * concurrent use.
+ */
+final class Suppressions {
+    private final Collection<String> ignorePackages;
+    private final Collection<Pattern> ignoreClassNamePatterns;
+    private final Collection<String> ignoreClassNames;
+    private final Collection<String> ignoreMethods;
+    private volatile Compiled compiled;
+
+    Suppressions(Collection<String> ignorePackages,
+            Collection<Pattern> ignoreClassNamePatterns,
+            Collection<String> ignoreClassNames,
+            Collection<String> ignoreMethods) {
+        this.ignorePackages = Utils.checkNotNull(ignorePackages);
+        this.ignoreClassNamePatterns =
+                Utils.checkNotNull(ignoreClassNamePatterns);
+        this.ignoreClassNames = Utils.checkNotNull(ignoreClassNames);
+        this.ignoreMethods = Utils.checkNotNull(ignoreMethods);
+    }
+
+    /** Returns whether the lookup structures have been built. */
+    boolean isLoaded() {
+        return compiled != null;
+    }
+
+    /** Returns whether the class, given by internal name, is ignored. */
+    boolean isClassIgnored(String className) {
+        Compiled c = get();
+        return c.ignoredPackages.containsPackageOf(className) ||
+                c.ignoredClasses.contains(className) ||
+                c.ignoredClassNamePatterns.matchesAny(className);
+    }
+
+    /** Returns the ignored methods of a class keyed by name, or null. */
+    Map<String, List<String[]>> getMethods(String className) {
+        return get().ignoredMethods.getMethods(className);
+    }
+
+    private Compiled get() {
+        Compiled result = compiled;
+        if (result == null) {
+            synchronized (this) {
+                result = compiled;
+                if (result == null) {
+                    result = new Compiled(this);
+                    compiled = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static final class Compiled {
+        private final PackageTrie ignoredPackages;
+        private final PatternSet ignoredClassNamePatterns;
+        private final IgnoredClasses ignoredClasses;
+        private final IgnoredMethods ignoredMethods;
+
+        Compiled(Suppressions suppressions) {
+            ignoredPackages = new PackageTrie(suppressions.ignorePackages);
+            ignoredClassNamePatterns =
+                    new PatternSet(suppressions.ignoreClassNamePatterns);
+            ignoredClasses = new IgnoredClasses(suppressions.ignoreClassNames);
+            ignoredMethods = new IgnoredMethods(suppressions.ignoreMethods);
+        }
+    }
+}
@@ -17,11 +17,14 @@
 package org.gaul.modernizer_maven_plugin;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -85,6 +88,46 @@ final class Utils {
         return lines;
     }
 
+    static byte[] readAllBytes(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (true) {
+            int count = is.read(buffer);
+            if (count == -1) {
+                break;
+            }
+            os.write(buffer, 0, count);
+        }
+        return os.toByteArray();
+    }
+
+    static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new AssertionError(nsae);
+        }
+    }
+
+    static String sha1Hex(byte[] bytes) {
+        return toHex(newSha1().digest(bytes));
+    }
+
+    static String sha1Hex(byte[] bytes, int offset, int length) {
+        MessageDigest digest = newSha1();
+        digest.update(bytes, offset, length);
+        return toHex(digest.digest());
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
     private Utils() {
         throw new AssertionError("Intentionally not implemented");
     }
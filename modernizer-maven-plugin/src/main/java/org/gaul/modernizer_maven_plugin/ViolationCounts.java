@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts occurrences per violation without retaining them, so that memory
+ * is bounded by the number of rules rather than the number of occurrences.
+ * Safe for concurrent use.
+ */
+final class ViolationCounts implements OccurrenceSink {
+    private final ConcurrentMap<Violation, AtomicLong> counts =
+            new ConcurrentHashMap<Violation, AtomicLong>();
+
+    @Override
+    public void add(String name, int lineNumber, Violation violation) {
+        AtomicLong count = counts.get(violation);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = counts.putIfAbsent(violation, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    long get(Violation violation) {
+        AtomicLong count = counts.get(violation);
+        return count == null ? 0 : count.get();
+    }
+
+    long getTotal() {
+        long total = 0;
+        for (AtomicLong count : counts.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the violations which occurred, most frequent first and then by
+     * name.
+     */
+    List<Violation> getViolations() {
+        List<Violation> violations = new ArrayList<Violation>(
+                counts.keySet());
+        Collections.sort(violations, new Comparator<Violation>() {
+            @Override
+            public int compare(Violation a, Violation b) {
+                long countA = get(a);
+                long countB = get(b);
+                if (countA != countB) {
+                    return countA > countB ? -1 : 1;
+                }
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return violations;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of the bundled modernizer.xml, generated when the
+ * plugin is built so that executions need not initialize an XML parser.
+ * The build runs main with the paths of modernizer.xml and modernizer.bin.
+ */
+public final class ViolationDatabase {
+    static final String RESOURCE_NAME = "/modernizer.bin";
+
+    private static final int MAGIC = 0x4d4f444e;  // MODN
+    private static final int FORMAT_VERSION = 1;
+
+    private ViolationDatabase() { }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            throw new IllegalArgumentException(
+                    "Usage: ViolationDatabase modernizer.xml modernizer.bin");
+        }
+        Map<String, Violation> violations;
+        InputStream is = new FileInputStream(args[0]);
+        try {
+            violations = Modernizer.parseFromXml(is);
+        } finally {
+            Utils.closeQuietly(is);
+        }
+        OutputStream os = new FileOutputStream(args[1]);
+        try {
+            write(violations, os);
+        } finally {
+            os.close();
+        }
+    }
+
+    static void write(Map<String, Violation> violations, OutputStream os)
+            throws IOException {
+        // sort for reproducible builds
+        List<String> names = new ArrayList<String>(violations.keySet());
+        Collections.sort(names);
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(os));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(names.size());
+        for (String name : names) {
+            Violation violation = violations.get(name);
+            out.writeUTF(violation.getName());
+            out.writeInt(violation.getVersion());
+            out.writeUTF(violation.getComment());
+        }
+        out.flush();
+    }
+
+    static Map<String, Violation> read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(is));
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported violation database");
+        }
+        int count = in.readInt();
+        Map<String, Violation> violations =
+                new HashMap<String, Violation>(count * 2);
+        for (int i = 0; i < count; ++i) {
+            Violation violation = new Violation(in.readUTF(), in.readInt(),
+                    in.readUTF());
+            violations.put(violation.getName(), violation);
+        }
+        return violations;
+    }
+}
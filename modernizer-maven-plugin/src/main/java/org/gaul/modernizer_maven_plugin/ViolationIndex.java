@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Violations indexed by owner internal name and then by member name and
+ * descriptor.  Violation names use the javap format, e.g.,
+ * java/util/Vector for a type and java/util/Vector."&lt;init&gt;":()V for a
+ * member.  Lookups do not allocate and owners without any violation are
+ * rejected with a single hash lookup.
+ */
+final class ViolationIndex {
+    private final Map<String, OwnerViolations> owners =
+            new HashMap<String, OwnerViolations>();
+
+    ViolationIndex(Map<String, Violation> violations) {
+        for (Map.Entry<String, Violation> entry : violations.entrySet()) {
+            String token = entry.getKey();
+            int dot = token.indexOf('.');
+            int colon = token.indexOf(':', dot + 1);
+            if (dot == -1 || colon == -1) {
+                getOrCreate(token).type = entry.getValue();
+                continue;
+            }
+            String name = token.substring(dot + 1, colon);
+            if (name.equals("\"<init>\"")) {
+                name = "<init>";
+            }
+            Map<String, Map<String, Violation>> members =
+                    getOrCreate(token.substring(0, dot)).members;
+            Map<String, Violation> descriptors = members.get(name);
+            if (descriptors == null) {
+                descriptors = new HashMap<String, Violation>();
+                members.put(name, descriptors);
+            }
+            descriptors.put(token.substring(colon + 1), entry.getValue());
+        }
+    }
+
+    private OwnerViolations getOrCreate(String owner) {
+        OwnerViolations ownerViolations = owners.get(owner);
+        if (ownerViolations == null) {
+            ownerViolations = new OwnerViolations();
+            owners.put(owner, ownerViolations);
+        }
+        return ownerViolations;
+    }
+
+    /** Returns the owners of all violations. */
+    Set<String> getOwners() {
+        return Collections.unmodifiableSet(owners.keySet());
+    }
+
+    /** Returns the violation for a class, interface or annotation. */
+    Violation getType(String owner) {
+        OwnerViolations ownerViolations = owners.get(owner);
+        return ownerViolations == null ? null : ownerViolations.type;
+    }
+
+    /** Returns the violation for a field or method, including &lt;init&gt;. */
+    Violation getMember(String owner, String name, String desc) {
+        OwnerViolations ownerViolations = owners.get(owner);
+        if (ownerViolations == null) {
+            return null;
+        }
+        Map<String, Violation> descriptors =
+                ownerViolations.members.get(name);
+        return descriptors == null ? null : descriptors.get(desc);
+    }
+
+    private static final class OwnerViolations {
+        private Violation type;
+        private final Map<String, Map<String, Violation>> members =
+                new HashMap<String, Map<String, Violation>>();
+    }
+}
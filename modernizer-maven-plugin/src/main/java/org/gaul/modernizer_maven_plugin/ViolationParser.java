@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Single-pass StAX parser for violation files which creates Violations
+ * directly instead of building a DOM.  Errors are reported as IOExceptions
+ * prefixed with the source name, line and column, e.g.,
+ * modernizer.xml:12:7: Invalid version, must have the form 1.6.
+ */
+final class ViolationParser {
+    private final String source;
+    private final XMLStreamReader reader;
+
+    private ViolationParser(InputStream is, String source)
+            throws XMLStreamException {
+        this.source = source;
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                Boolean.FALSE);
+        this.reader = factory.createXMLStreamReader(is);
+    }
+
+    static Map<String, Violation> parse(InputStream is, String source)
+            throws IOException {
+        ViolationParser parser;
+        try {
+            parser = new ViolationParser(is, source);
+        } catch (XMLStreamException xse) {
+            throw parseError(source, xse);
+        }
+        try {
+            return parser.parse();
+        } catch (XMLStreamException xse) {
+            throw parseError(source, xse);
+        } finally {
+            try {
+                parser.reader.close();
+            } catch (XMLStreamException xse) {
+                // ignore
+            }
+        }
+    }
+
+    private Map<String, Violation> parse()
+            throws IOException, XMLStreamException {
+        Map<String, Violation> violations = new HashMap<String, Violation>();
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+                    reader.getLocalName().equals("violation")) {
+                Violation violation = parseViolation();
+                violations.put(violation.getName(), violation);
+            }
+        }
+        return violations;
+    }
+
+    /** Parse the children of a violation element up to its end tag. */
+    private Violation parseViolation() throws IOException, XMLStreamException {
+        int line = reader.getLocation().getLineNumber();
+        int column = reader.getLocation().getColumnNumber();
+        String name = null;
+        String comment = null;
+        int version = -1;
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                --depth;
+            } else if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            } else if (depth > 1) {
+                ++depth;
+            } else if (reader.getLocalName().equals("name")) {
+                name = reader.getElementText().trim();
+            } else if (reader.getLocalName().equals("version")) {
+                int versionLine = reader.getLocation().getLineNumber();
+                int versionColumn = reader.getLocation().getColumnNumber();
+                version = parseVersion(reader.getElementText().trim(),
+                        versionLine, versionColumn);
+            } else if (reader.getLocalName().equals("comment")) {
+                comment = reader.getElementText().trim();
+            } else {
+                ++depth;
+            }
+        }
+        if (name == null || version == -1 || comment == null) {
+            throw error(line, column,
+                    "violation requires name, version and comment");
+        }
+        return new Violation(name, version, comment);
+    }
+
+    private int parseVersion(String version, int line, int column)
+            throws IOException {
+        if (version.startsWith("1.")) {
+            try {
+                return Integer.parseInt(version.substring(2));
+            } catch (NumberFormatException nfe) {
+                // fall through
+            }
+        }
+        throw error(line, column, "Invalid version, must have the form 1.6");
+    }
+
+    private IOException error(int line, int column, String message) {
+        return new IOException(source + ":" + line + ":" + column + ": " +
+                message);
+    }
+
+    private static IOException parseError(String source,
+            XMLStreamException xse) {
+        Location location = xse.getLocation();
+        String message = xse.getMessage();
+        // the JDK prefixes the message with its own location
+        int index = message == null ? -1 : message.indexOf("Message: ");
+        if (index != -1) {
+            message = message.substring(index + "Message: ".length());
+        }
+        if (location == null) {
+            return new IOException(source + ": " + message, xse);
+        }
+        return new IOException(source + ":" + location.getLineNumber() + ":" +
+                location.getColumnNumber() + ": " + message, xse);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class ArtifactCacheTest {
+    private static final String COORDINATES = "org.gaul:foo:jar:1.0";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Map<String, Violation> violations;
+    private Map<String, Collection<ViolationOccurrence>> results;
+
+    @Before
+    public void setUp() throws Exception {
+        violations = ModernizerTestUtils.readViolations();
+        Violation violation = violations.get("java/util/Vector.\"<init>\":()V");
+        results = Collections.<String, Collection<ViolationOccurrence>>
+                singletonMap("org/gaul/Foo.class", Collections.singleton(
+                        new ViolationOccurrence("org/gaul/Foo", 42,
+                                violation)));
+    }
+
+    @Test
+    public void testReleaseIsTrustedByCoordinates() throws Exception {
+        ArtifactCache cache = new ArtifactCache(temporaryFolder.getRoot(),
+                "fingerprint", violations);
+        assertThat(cache.get(COORDINATES, null)).isNull();
+        cache.put(COORDINATES, "checksum", results);
+
+        Map<String, Collection<ViolationOccurrence>> loaded =
+                cache.get(COORDINATES, null);
+        assertThat(loaded).hasSize(1);
+        ViolationOccurrence occurrence =
+                loaded.get("org/gaul/Foo.class").iterator().next();
+        assertThat(occurrence.getLineNumber()).isEqualTo(42);
+        assertThat(cache.get("org.gaul:foo:jar:2.0", null)).isNull();
+    }
+
+    @Test
+    public void testSnapshotIsRevalidatedByChecksum() throws Exception {
+        ArtifactCache cache = new ArtifactCache(temporaryFolder.getRoot(),
+                "fingerprint", violations);
+        cache.put(COORDINATES, "checksum", results);
+        assertThat(cache.get(COORDINATES, "checksum")).hasSize(1);
+        assertThat(cache.get(COORDINATES, "other")).isNull();
+    }
+
+    @Test
+    public void testPruneKeepsRecentlyUsedRuleSets() throws Exception {
+        File root = temporaryFolder.getRoot();
+        for (int i = 0; i < 4; ++i) {
+            new ArtifactCache(root, "old" + i, violations).put(COORDINATES,
+                    "checksum", results);
+            // oldest first
+            new File(root, "old" + i).setLastModified(1000L * (i + 1));
+        }
+        ArtifactCache cache = new ArtifactCache(root, "old0", violations);
+        cache.prune(2);
+        // using old0 makes it the most recent
+        assertThat(root.list()).containsOnly("old0", "old3");
+        assertThat(cache.get(COORDINATES, null)).hasSize(1);
+    }
+}
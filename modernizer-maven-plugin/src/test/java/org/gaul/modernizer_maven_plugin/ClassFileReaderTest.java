@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class ClassFileReaderTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testReadReusesBuffer() throws Exception {
+        ClassFileReader reader = ClassFileReader.forCurrentThread();
+        byte[] small = writeAndRead(reader, "small.class", 100);
+        byte[] buffer = reader.getBuffer();
+        writeAndRead(reader, "smaller.class", 10);
+        assertThat(reader.getBuffer()).isSameAs(buffer);
+        assertThat(small).hasSize(100);
+    }
+
+    @Test
+    public void testReadGrowsBuffer() throws Exception {
+        ClassFileReader reader = ClassFileReader.forCurrentThread();
+        writeAndRead(reader, "medium.class", 100 * 1024);
+    }
+
+    @Test
+    public void testReadLargeFileIntoOneOffArray() throws Exception {
+        ClassFileReader reader = ClassFileReader.forCurrentThread();
+        writeAndRead(reader, "large.class", 2 * 1024 * 1024);
+        byte[] large = reader.getBuffer();
+        writeAndRead(reader, "small.class", 100);
+        assertThat(reader.getBuffer()).isNotSameAs(large);
+    }
+
+    @Test
+    public void testReadEmptyFile() throws Exception {
+        ClassFileReader reader = ClassFileReader.forCurrentThread();
+        writeAndRead(reader, "empty.class", 0);
+    }
+
+    @Test
+    public void testReadStream() throws Exception {
+        ClassFileReader reader = ClassFileReader.forCurrentThread();
+        for (int size : new int[] {0, 100, 100 * 1024, 2 * 1024 * 1024}) {
+            byte[] expected = new byte[size];
+            new Random(size).nextBytes(expected);
+            // unknown size as for streamed zip entries
+            reader.read(new ByteArrayInputStream(expected), -1);
+            assertThat(reader.getLength()).isEqualTo(size);
+            assertThat(Arrays.copyOf(reader.getBuffer(), reader.getLength()))
+                    .isEqualTo(expected);
+        }
+    }
+
+    /** Write size random bytes, read them back and check the contents. */
+    private byte[] writeAndRead(ClassFileReader reader, String name,
+            int size) throws Exception {
+        byte[] expected = new byte[size];
+        new Random(size).nextBytes(expected);
+        File file = new File(temporaryFolder.getRoot(), name);
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(expected);
+        } finally {
+            os.close();
+        }
+        reader.read(file);
+        assertThat(reader.getLength()).isEqualTo(size);
+        byte[] actual = Arrays.copyOf(reader.getBuffer(), reader.getLength());
+        assertThat(actual).isEqualTo(expected);
+        return actual;
+    }
+}
@@ -0,0 +1,879 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.artifact.resolver.ResolutionNode;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
+import org.gaul.modernizer_annotation_processor.ModernizerAnnotationUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/** Runs the mojo against class files copied from the test classes. */
+public final class ModernizerMojoTest {
+    private static final String REPLAYED =
+            "Classes and configuration unchanged since last run";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File outputDirectory;
+    private File testOutputDirectory;
+    private File buildDirectory;
+    private File stampFile;
+    private RecordingProjectHelper projectHelper;
+    private RecordingLog log;
+
+    @Before
+    public void setUp() throws Exception {
+        File root = temporaryFolder.getRoot();
+        outputDirectory = new File(root, "target/classes");
+        testOutputDirectory = new File(root, "target/test-classes");
+        buildDirectory = new File(root, "target");
+        stampFile = new File(buildDirectory, "modernizer/stamp.bin");
+        copyClass("VectorTestClass", new File(outputDirectory,
+                "org/example/Foo.class"));
+        copyClass("ArrayListTestClass", new File(outputDirectory,
+                "org/example/Bar.class"));
+        copyClass("StringGetBytesString", new File(testOutputDirectory,
+                "org/example/FooTest.class"));
+    }
+
+    @Test
+    public void testUnchangedRunIsReplayed() throws Exception {
+        List<String> errors = execute(newMojo()).errors;
+        assertThat(errors).hasSize(2);
+        assertThat(log.debugs).doesNotContain(REPLAYED);
+
+        ModernizerMojo mojo = newMojo();
+        assertThat(execute(mojo).errors).isEqualTo(errors);
+        assertThat(log.debugs).contains(REPLAYED);
+    }
+
+    @Test
+    public void testModifiedClassInvalidatesStamp() throws Exception {
+        execute(newMojo());
+        File file = new File(outputDirectory, "org/example/Bar.class");
+        assertThat(file.setLastModified(file.lastModified() + 2000)).isTrue();
+
+        execute(newMojo());
+        assertThat(log.debugs).doesNotContain(REPLAYED);
+    }
+
+    @Test
+    public void testResizedClassInvalidatesStamp() throws Exception {
+        execute(newMojo());
+        // another class of a different size with the same modification time
+        File file = new File(outputDirectory, "org/example/Bar.class");
+        long lastModified = file.lastModified();
+        long length = file.length();
+        copyClass("VectorTestClass", file);
+        assertThat(file.setLastModified(lastModified)).isTrue();
+        assertThat(file.length()).isNotEqualTo(length);
+
+        assertThat(execute(newMojo()).errors).hasSize(3);
+        assertThat(log.debugs).doesNotContain(REPLAYED);
+    }
+
+    @Test
+    public void testChangedIgnoreFileInvalidatesStamp() throws Exception {
+        assertThat(execute(newMojo()).errors).hasSize(2);
+        File ignoreFile = new File(
+                ModernizerAnnotationUtils.getOutputDir(outputDirectory),
+                ModernizerAnnotationUtils.IGNORE_CLASSES_FILE_NAME);
+        // ignores apply to the class names within the files
+        writeFile(ignoreFile,
+                "org/gaul/modernizer_maven_plugin/ModernizerTest$" +
+                "VectorTestClass\n");
+
+        assertThat(execute(newMojo()).errors).hasSize(1);
+        assertThat(log.debugs).doesNotContain(REPLAYED);
+    }
+
+    @Test
+    public void testFailingRunIsNotStamped() throws Exception {
+        ModernizerMojo mojo = newMojo();
+        mojo.failOnViolations = true;
+        try {
+            mojo.execute();
+            fail("Expected MojoExecutionException");
+        } catch (MojoExecutionException mee) {
+            assertThat(mee.getMessage()).isEqualTo("Found 2 violations");
+        }
+        assertThat(stampFile).doesNotExist();
+    }
+
+    @Test
+    public void testRunWithManyViolationsIsNotStamped() throws Exception {
+        writeVectorClass(new File(outputDirectory, "org/example/Many.class"),
+                "org/example/Many", 1, 999);
+        assertThat(execute(newMojo()).errors).hasSize(1001);
+        assertThat(stampFile).doesNotExist();
+
+        execute(newMojo());
+        assertThat(log.debugs).doesNotContain(REPLAYED);
+    }
+
+    @Test
+    public void testReplayReattachesIndex() throws Exception {
+        ModernizerMojo mojo = newMojo();
+        mojo.attachIndex = true;
+        execute(mojo);
+        assertThat(projectHelper.attached).hasSize(1);
+        File indexFile = projectHelper.attached.get(0);
+
+        mojo = newMojo();
+        mojo.attachIndex = true;
+        execute(mojo);
+        assertThat(log.debugs).contains(REPLAYED);
+        assertThat(projectHelper.attached).containsExactly(indexFile);
+    }
+
+    @Test
+    public void testReplayRequiresIndex() throws Exception {
+        ModernizerMojo mojo = newMojo();
+        mojo.attachIndex = true;
+        execute(mojo);
+        File indexFile = projectHelper.attached.get(0);
+        assertThat(indexFile.delete()).isTrue();
+
+        mojo = newMojo();
+        mojo.attachIndex = true;
+        execute(mojo);
+        assertThat(log.debugs).doesNotContain(REPLAYED);
+        assertThat(indexFile).exists();
+    }
+
+    @Test
+    public void testChangedExclusionsRescanClasses() throws Exception {
+        assertThat(execute(newMojo()).errors).hasSize(2);
+
+        ModernizerMojo mojo = newMojo();
+        mojo.exclusions = Collections.singleton(
+                "java/util/Vector.\"<init>\":()V");
+        assertThat(execute(mojo).errors).hasSize(1);
+    }
+
+    @Test
+    public void testIdenticalConfigurationReusesModernizer()
+            throws Exception {
+        ModernizerMojo mojo = newMojo();
+        mojo.useCache = false;
+        execute(mojo);
+        Modernizer modernizer = getModernizer(mojo);
+
+        mojo = newMojo();
+        mojo.useCache = false;
+        execute(mojo);
+        assertThat(getModernizer(mojo)).isSameAs(modernizer);
+        assertThat(log.debugs).contains(
+                "Reusing modernizer with identical configuration");
+    }
+
+    @Test
+    public void testChangedExclusionsFileCreatesModernizer()
+            throws Exception {
+        File exclusionsFile = new File(temporaryFolder.getRoot(),
+                "exclusions.txt");
+        writeFile(exclusionsFile, "java/util/Hashtable.\"<init>\":()V\n");
+        ModernizerMojo mojo = newMojo();
+        mojo.useCache = false;
+        set(mojo, "exclusionsFile", exclusionsFile.getPath());
+        assertThat(execute(mojo).errors).hasSize(2);
+        Modernizer modernizer = getModernizer(mojo);
+
+        writeFile(exclusionsFile, "java/util/Vector.\"<init>\":()V\n");
+        mojo = newMojo();
+        mojo.useCache = false;
+        set(mojo, "exclusionsFile", exclusionsFile.getPath());
+        assertThat(execute(mojo).errors).hasSize(1);
+        assertThat(getModernizer(mojo)).isNotSameAs(modernizer);
+    }
+
+    @Test
+    public void testChangedIgnoreFileCreatesModernizer() throws Exception {
+        File ignoreFile = new File(
+                ModernizerAnnotationUtils.getOutputDir(outputDirectory),
+                ModernizerAnnotationUtils.IGNORE_CLASSES_FILE_NAME);
+        writeFile(ignoreFile, "org/example/Other\n");
+        ModernizerMojo mojo = newMojo();
+        mojo.useCache = false;
+        assertThat(execute(mojo).errors).hasSize(2);
+        Modernizer modernizer = getModernizer(mojo);
+
+        writeFile(ignoreFile,
+                "org/gaul/modernizer_maven_plugin/ModernizerTest$" +
+                "VectorTestClass\n");
+        mojo = newMojo();
+        mojo.useCache = false;
+        assertThat(execute(mojo).errors).hasSize(1);
+        assertThat(getModernizer(mojo)).isNotSameAs(modernizer);
+    }
+
+    @Test
+    public void testUnreadableScanCacheIsIgnored() throws Exception {
+        List<String> errors = execute(newMojo()).errors;
+        writeFile(new File(buildDirectory, "modernizer/scan-cache.bin"),
+                "garbage");
+        assertThat(stampFile.delete()).isTrue();
+
+        assertThat(execute(newMojo()).errors).isEqualTo(errors);
+    }
+
+    @Test
+    public void testIndexCoversMainClasses() throws Exception {
+        ModernizerMojo mojo = newMojo();
+        mojo.attachIndex = true;
+        execute(mojo);
+
+        ScanIndex index = ScanIndex.read(projectHelper.attached.get(0),
+                getModernizer(mojo).getRuleFingerprint(),
+                getModernizer(mojo).getViolations());
+        assertThat(index.getClassHashes()).containsOnlyKeys(
+                "org/example/Bar.class", "org/example/Foo.class");
+        assertThat(index.getOccurrences()).containsOnlyKeys(
+                "org/example/Foo.class");
+    }
+
+    @Test
+    public void testChangedFilesManifestDoesNotAttachIndex()
+            throws Exception {
+        File manifest = new File(temporaryFolder.getRoot(), "changed.txt");
+        writeFile(manifest, "src/main/java/org/example/Foo.java\n");
+        ModernizerMojo mojo = newMojo();
+        mojo.attachIndex = true;
+        mojo.changedFilesManifest = manifest;
+
+        assertThat(execute(mojo).errors).hasSize(1);
+        assertThat(log.warnings).containsExactly(
+                "Not attaching index when checking changed files only");
+        assertThat(projectHelper.attached).isEmpty();
+    }
+
+    @Test
+    public void testRelativizeRepositoryRootRelativePath() throws Exception {
+        File sourceRoot = new File(temporaryFolder.getRoot(),
+                "module/src/main/java");
+        assertThat(ModernizerMojo.relativize(
+                "module/src/main/java/org/example/Foo.java", sourceRoot))
+                .isEqualTo(path("org/example/Foo.java"));
+    }
+
+    @Test
+    public void testRelativizeModuleRelativePath() throws Exception {
+        File sourceRoot = new File(temporaryFolder.getRoot(),
+                "module/src/main/java");
+        assertThat(ModernizerMojo.relativize(
+                "src/main/java/org/example/Foo.java", sourceRoot))
+                .isEqualTo(path("org/example/Foo.java"));
+    }
+
+    @Test
+    public void testRelativizeAbsolutePath() throws Exception {
+        File sourceRoot = new File(temporaryFolder.getRoot(),
+                "module/src/main/java");
+        assertThat(ModernizerMojo.relativize(new File(sourceRoot,
+                "org/example/Foo.java").getAbsolutePath(), sourceRoot))
+                .isEqualTo(path("org/example/Foo.java"));
+        assertThat(ModernizerMojo.relativize(new File(
+                temporaryFolder.getRoot(), "Foo.java").getAbsolutePath(),
+                sourceRoot)).isNull();
+    }
+
+    @Test
+    public void testAddChangedClassFiles() throws Exception {
+        File module = new File(temporaryFolder.getRoot(), "module");
+        File sourceRoot = new File(module, "src/main/java");
+        File classRoot = new File(module, "target/classes");
+        File foo = new File(classRoot, "org/example/Foo.class");
+        File fooInner = new File(classRoot, "org/example/Foo$Inner.class");
+        File foobar = new File(classRoot, "org/example/Foobar.class");
+        File bar = new File(classRoot, "org/example/Bar.class");
+        for (File file : new File[] {foo, fooInner, foobar, bar}) {
+            writeFile(file, "");
+        }
+
+        List<File> files = new ArrayList<File>();
+        ModernizerMojo.addChangedClassFiles(Arrays.asList(
+                // a source maps to its class and nested classes
+                "src/main/java/org/example/Foo.java",
+                // a class file is checked as is
+                "module/target/classes/org/example/Bar.class",
+                "README.md",
+                "src/test/java/org/example/Foobar.java",
+                "target/classes/org/example/Missing.class"),
+                sourceRoot, classRoot, files);
+        assertThat(files).containsOnly(foo, fooInner, bar);
+    }
+
+    @Test
+    public void testAddClassFilesIncludesNestedClasses() throws Exception {
+        File directory = new File(temporaryFolder.getRoot(), "org/example");
+        File foo = new File(directory, "Foo.class");
+        File fooInner = new File(directory, "Foo$Inner.class");
+        File fooInnerSource = new File(directory, "Foo$Inner.java");
+        File foobar = new File(directory, "Foobar.class");
+        for (File file : new File[] {foo, fooInner, fooInnerSource, foobar}) {
+            writeFile(file, "");
+        }
+
+        Set<File> classFiles = new TreeSet<File>();
+        ModernizerMojo.addClassFiles(new File(directory, "Foo"), classFiles);
+        assertThat(classFiles).containsOnly(foo, fooInner);
+    }
+
+    @Test
+    public void testSpilledRunUsesScanCache() throws Exception {
+        // more occurrences than fit in the minimum budget of one megabyte
+        for (int i = 0; i < 10; ++i) {
+            writeVectorClass(new File(outputDirectory,
+                    "org/example/Many" + i + ".class"),
+                    "org/example/Many" + i, 6, 1000);
+        }
+        ModernizerMojo mojo = newMojo();
+        mojo.occurrenceBufferMegabytes = 1;
+        List<String> errors = execute(mojo).errors;
+        assertThat(errors).hasSize(60002);
+        assertThat(log.debugs).contains("Spilled 60002 occurrences to disk");
+        // spilled runs are not stamped but their results are cached
+        assertThat(stampFile).doesNotExist();
+        File cacheFile = new File(buildDirectory, "modernizer/scan-cache.bin");
+        long length = cacheFile.length();
+        assertThat(length).isGreaterThan(0);
+
+        mojo = newMojo();
+        mojo.occurrenceBufferMegabytes = 1;
+        assertThat(execute(mojo).errors).isEqualTo(errors);
+        assertThat(cacheFile.length()).isEqualTo(length);
+        // neither spilled runs nor the journal remain
+        assertThat(cacheFile.getParentFile().list())
+                .containsOnly("scan-cache.bin");
+    }
+
+    @Test
+    public void testThreadsDoNotChangeOrder() throws Exception {
+        // classes of varying cost so that threads finish out of order
+        int expected = 2;
+        for (int i = 0; i < 40; ++i) {
+            int methods = 1 + i % 3;
+            int occurrences = 1 + 50 * (i % 7);
+            writeVectorClass(new File(i % 2 == 0 ? outputDirectory :
+                    testOutputDirectory, "org/example/Class" + i + ".class"),
+                    "org/example/Class" + i, methods, occurrences);
+            expected += methods * occurrences;
+        }
+        ModernizerMojo mojo = newMojo();
+        mojo.useCache = false;
+        List<String> errors = execute(mojo).errors;
+        assertThat(errors).hasSize(expected);
+
+        for (int threads : new int[] {2, 8}) {
+            mojo = newMojo();
+            mojo.useCache = false;
+            mojo.threads = threads;
+            assertThat(execute(mojo).errors).isEqualTo(errors);
+        }
+    }
+
+    @Test
+    public void testSingleThreadStopsAtFirstFailure() throws Exception {
+        final AtomicInteger started = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < 3; ++i) {
+            final int task = i;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    started.incrementAndGet();
+                    if (task == 1) {
+                        throw new IOException("unreadable");
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            newMojo().runTasks(null, tasks);
+            fail("Expected IOException");
+        } catch (IOException ioe) {
+            assertThat(ioe.getMessage()).isEqualTo("unreadable");
+        }
+        assertThat(started.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testMoreThanMaxViolationsFails() throws Exception {
+        ModernizerMojo mojo = newMojo();
+        mojo.failOnViolations = true;
+        mojo.maxViolations = 0;
+        try {
+            execute(mojo);
+            fail("Expected MojoExecutionException");
+        } catch (MojoExecutionException mee) {
+            assertThat(mee.getMessage()).isEqualTo(
+                    "Found 1 violations, more than maxViolations 0");
+        }
+        assertThat(log.errors).hasSize(1);
+        assertThat(stampFile).doesNotExist();
+    }
+
+    @Test
+    public void testMaxViolationsSkipsQueuedClasses() throws Exception {
+        for (int i = 0; i < 200; ++i) {
+            writeVectorClass(new File(outputDirectory,
+                    "org/example/Class" + i + ".class"),
+                    "org/example/Class" + i, 1, 1);
+        }
+        ModernizerMojo mojo = newMojo();
+        mojo.useCache = false;
+        mojo.failOnViolations = true;
+        mojo.maxViolations = 0;
+        mojo.threads = 4;
+        try {
+            execute(mojo);
+            fail("Expected MojoExecutionException");
+        } catch (MojoExecutionException mee) {
+            assertThat(mee.getMessage())
+                    .contains("more than maxViolations 0");
+        }
+        // each thread checks at most a few classes before the budget stops it
+        assertThat(log.errors).isNotEmpty();
+        assertThat(log.errors.size()).isLessThan(202);
+    }
+
+    @Test
+    public void testNewestFirstChecksRecentlyModifiedClasses()
+            throws Exception {
+        long now = System.currentTimeMillis();
+        assertThat(new File(outputDirectory, "org/example/Foo.class")
+                .setLastModified(now - 3600000)).isTrue();
+        assertThat(new File(testOutputDirectory, "org/example/FooTest.class")
+                .setLastModified(now - 3600000)).isTrue();
+        for (int i = 0; i < 5; ++i) {
+            File file = new File(outputDirectory,
+                    "org/example/Class" + i + ".class");
+            writeVectorClass(file, "org/example/Class" + i, 1, 1);
+            assertThat(file.setLastModified(now - 60000 * (5 - i))).isTrue();
+        }
+        ModernizerMojo mojo = newMojo();
+        mojo.useCache = false;
+        mojo.failOnViolations = true;
+        mojo.maxViolations = 0;
+        mojo.newestFirst = true;
+        try {
+            execute(mojo);
+            fail("Expected MojoExecutionException");
+        } catch (MojoExecutionException mee) {
+            assertThat(mee.getMessage()).isEqualTo(
+                    "Found 1 violations, more than maxViolations 0");
+        }
+        assertThat(log.errors).hasSize(1);
+        assertThat(log.errors.get(0)).contains("org/example/Class4");
+    }
+
+    @Test
+    public void testScanIncludedDependencies() throws Exception {
+        File jar = writeJar("dep.jar", "org/example/Dep.class",
+                "VectorTestClass");
+        ModernizerMojo mojo = newMojo();
+        mojo.useCache = false;
+        mojo.scanDependencies = true;
+        mojo.dependencyIncludes = Collections.singleton("org.example");
+        setDependencies(mojo, null, newArtifact("org.example.sub", "dep", jar),
+                newArtifact("com.example", "other", jar));
+
+        List<String> errors = execute(mojo).errors;
+        assertThat(errors).hasSize(3);
+        assertThat(errors.get(2))
+                .startsWith("org.example.sub:dep:jar:1.0!/org/example/" +
+                        "Dep.class:")
+                .endsWith(": Prefer java.util.ArrayList");
+        assertThat(log.infos).contains(
+                "Found 1 violations in org.example.sub:dep:jar:1.0");
+        assertThat(log.infos.toString()).doesNotContain("com.example");
+    }
+
+    @Test
+    public void testFailOnDependencyViolations() throws Exception {
+        // only the dependency has violations
+        assertThat(new File(outputDirectory, "org/example/Foo.class")
+                .delete()).isTrue();
+        assertThat(new File(testOutputDirectory, "org/example/FooTest.class")
+                .delete()).isTrue();
+        File jar = writeJar("dep.jar", "org/example/Dep.class",
+                "VectorTestClass");
+
+        ModernizerMojo mojo = newMojo();
+        mojo.failOnViolations = true;
+        mojo.scanDependencies = true;
+        setDependencies(mojo, null, newArtifact("org.example", "dep", jar));
+        assertThat(execute(mojo).errors).hasSize(1);
+
+        mojo = newMojo();
+        mojo.failOnViolations = true;
+        mojo.failOnDependencyViolations = true;
+        mojo.scanDependencies = true;
+        setDependencies(mojo, null, newArtifact("org.example", "dep", jar));
+        try {
+            mojo.execute();
+            fail("Expected MojoExecutionException");
+        } catch (MojoExecutionException mee) {
+            assertThat(mee.getMessage()).isEqualTo("Found 1 violations");
+        }
+    }
+
+    @Test
+    public void testIndexResultsAreNotCached() throws Exception {
+        ModernizerMojo mojo = newMojo();
+        execute(mojo);
+        // an index whose producer ignored the violation in the jar
+        ScanIndex index = new ScanIndex(
+                getModernizer(mojo).getRuleFingerprint());
+        index.add("org/example/Dep.class", "hash",
+                Collections.<ViolationOccurrence>emptyList());
+        File indexFile = new File(temporaryFolder.getRoot(), "index.bin");
+        index.write(indexFile);
+        File jar = writeJar("dep.jar", "org/example/Dep.class",
+                "VectorTestClass");
+        File repository = temporaryFolder.newFolder("repository");
+
+        mojo = newMojo();
+        mojo.scanDependencies = true;
+        mojo.useDependencyIndexes = true;
+        setLocalRepository(mojo, repository);
+        setDependencies(mojo, indexFile, newArtifact("org.example", "dep",
+                jar));
+        assertThat(execute(mojo).errors).hasSize(2);
+        assertThat(log.debugs).contains(
+                "Using scan index for org.example:dep:jar:1.0");
+
+        mojo = newMojo();
+        mojo.scanDependencies = true;
+        setLocalRepository(mojo, repository);
+        setDependencies(mojo, null, newArtifact("org.example", "dep", jar));
+        assertThat(execute(mojo).errors).hasSize(3);
+    }
+
+    private ModernizerMojo newMojo() throws Exception {
+        ModernizerMojo mojo = new ModernizerMojo();
+        set(mojo, "project", new MavenProject());
+        set(mojo, "sourceDirectory",
+                new File(temporaryFolder.getRoot(), "src/main/java"));
+        set(mojo, "testSourceDirectory",
+                new File(temporaryFolder.getRoot(), "src/test/java"));
+        set(mojo, "outputDirectory", outputDirectory);
+        set(mojo, "testOutputDirectory", testOutputDirectory);
+        set(mojo, "buildDirectory", buildDirectory);
+        set(mojo, "javaVersion", "1.8");
+        set(mojo, "violationLogLevel", "error");
+        projectHelper = new RecordingProjectHelper();
+        set(mojo, "projectHelper", projectHelper);
+        log = new RecordingLog();
+        mojo.setLog(log);
+        mojo.failOnViolations = false;
+        return mojo;
+    }
+
+    private File writeJar(String name, String entry, String className)
+            throws IOException {
+        File jar = new File(temporaryFolder.getRoot(), name);
+        InputStream is = ModernizerTest.class.getResourceAsStream(
+                "ModernizerTest$" + className + ".class");
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            jos.putNextEntry(new JarEntry(entry));
+            jos.write(Utils.readAllBytes(is));
+            jos.closeEntry();
+        } finally {
+            Utils.closeQuietly(jos);
+            Utils.closeQuietly(is);
+        }
+        return jar;
+    }
+
+    private static Artifact newArtifact(String groupId, String artifactId,
+            File file) {
+        Artifact artifact = new DefaultArtifact(groupId, artifactId,
+                VersionRange.createFromVersion("1.0"), Artifact.SCOPE_COMPILE,
+                "jar", null, new DefaultArtifactHandler("jar"));
+        artifact.setFile(file);
+        return artifact;
+    }
+
+    /**
+     * Resolve the dependencies of the project to the given artifacts and
+     * their modernizer-index artifacts, if any, to indexFile.
+     */
+    private static void setDependencies(ModernizerMojo mojo,
+            final File indexFile, Artifact... artifacts) throws Exception {
+        final Set<ResolutionNode> nodes = new LinkedHashSet<ResolutionNode>();
+        for (Artifact artifact : artifacts) {
+            nodes.add(new ResolutionNode(artifact,
+                    Collections.emptyList()));
+        }
+        set(mojo, "artifactResolver", Proxy.newProxyInstance(
+                ArtifactResolver.class.getClassLoader(),
+                new Class<?>[] {ArtifactResolver.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) {
+                        if (method.getName().equals("resolve") &&
+                                indexFile != null) {
+                            ((Artifact) args[0]).setFile(indexFile);
+                            return null;
+                        }
+                        if (!method.getName().equals("resolveTransitively")) {
+                            throw new UnsupportedOperationException(
+                                    method.getName());
+                        }
+                        ArtifactResolutionResult result =
+                                new ArtifactResolutionResult();
+                        result.setArtifactResolutionNodes(nodes);
+                        return result;
+                    }
+                }));
+    }
+
+    /** Use directory as local repository and create index artifacts. */
+    private static void setLocalRepository(ModernizerMojo mojo,
+            final File directory) throws Exception {
+        set(mojo, "localRepository", Proxy.newProxyInstance(
+                ArtifactRepository.class.getClassLoader(),
+                new Class<?>[] {ArtifactRepository.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) {
+                        if (!method.getName().equals("getBasedir")) {
+                            throw new UnsupportedOperationException(
+                                    method.getName());
+                        }
+                        return directory.getPath();
+                    }
+                }));
+        set(mojo, "artifactFactory", Proxy.newProxyInstance(
+                ArtifactFactory.class.getClassLoader(),
+                new Class<?>[] {ArtifactFactory.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) {
+                        if (!method.getName().equals(
+                                "createArtifactWithClassifier")) {
+                            throw new UnsupportedOperationException(
+                                    method.getName());
+                        }
+                        return new DefaultArtifact((String) args[0],
+                                (String) args[1],
+                                VersionRange.createFromVersion(
+                                        (String) args[2]),
+                                null, (String) args[3], (String) args[4],
+                                new DefaultArtifactHandler(
+                                        (String) args[3]));
+                    }
+                }));
+    }
+
+    private static String path(String path) {
+        return path.replace('/', File.separatorChar);
+    }
+
+    private static Modernizer getModernizer(ModernizerMojo mojo)
+            throws Exception {
+        Field field = ModernizerMojo.class.getDeclaredField("modernizer");
+        field.setAccessible(true);
+        return (Modernizer) field.get(mojo);
+    }
+
+    private RecordingLog execute(ModernizerMojo mojo) throws Exception {
+        mojo.execute();
+        return log;
+    }
+
+    private static void set(Object object, String name, Object value)
+            throws Exception {
+        Field field = ModernizerMojo.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(object, value);
+    }
+
+    /** Write a class whose methods each construct many Vectors. */
+    private static void writeVectorClass(File file, String name, int methods,
+            int occurrences) throws IOException {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, name, null,
+                "java/lang/Object", null);
+        for (int i = 0; i < methods; ++i) {
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "m" + i,
+                    "()V", null, null);
+            mv.visitCode();
+            for (int j = 0; j < occurrences; ++j) {
+                mv.visitTypeInsn(Opcodes.NEW, "java/util/Vector");
+                mv.visitInsn(Opcodes.DUP);
+                mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/util/Vector",
+                        "<init>", "()V", false);
+                mv.visitInsn(Opcodes.POP);
+            }
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        writeFile(file, cw.toByteArray());
+    }
+
+    private static void copyClass(String name, File file) throws IOException {
+        InputStream is = ModernizerTest.class.getResourceAsStream(
+                "ModernizerTest$" + name + ".class");
+        try {
+            writeFile(file, Utils.readAllBytes(is));
+        } finally {
+            Utils.closeQuietly(is);
+        }
+    }
+
+    private static void writeFile(File file, String contents)
+            throws IOException {
+        writeFile(file, contents.getBytes(Utils.UTF_8));
+    }
+
+    private static void writeFile(File file, byte[] contents)
+            throws IOException {
+        assertThat(file.getParentFile().isDirectory() ||
+                file.getParentFile().mkdirs()).isTrue();
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(contents);
+        } finally {
+            Utils.closeQuietly(os);
+        }
+    }
+
+    /** Records the messages the mojo logs instead of printing them. */
+    private static final class RecordingLog extends SystemStreamLog {
+        private final List<String> debugs = new ArrayList<String>();
+        private final List<String> infos = new ArrayList<String>();
+        private final List<String> warnings = new ArrayList<String>();
+        private final List<String> errors = new ArrayList<String>();
+
+        @Override
+        public boolean isDebugEnabled() {
+            return true;
+        }
+
+        @Override
+        public void debug(CharSequence content) {
+            debugs.add(content.toString());
+        }
+
+        @Override
+        public void debug(CharSequence content, Throwable error) {
+            debugs.add(content.toString());
+        }
+
+        @Override
+        public void info(CharSequence content) {
+            infos.add(content.toString());
+        }
+
+        @Override
+        public void warn(CharSequence content) {
+            warnings.add(content.toString());
+        }
+
+        @Override
+        public void error(CharSequence content) {
+            errors.add(content.toString());
+        }
+    }
+
+    /** Records the files of attached artifacts. */
+    private static final class RecordingProjectHelper
+            implements MavenProjectHelper {
+        private final List<File> attached = new ArrayList<File>();
+
+        @Override
+        public void attachArtifact(MavenProject project, File file,
+                String classifier) {
+            attached.add(file);
+        }
+
+        @Override
+        public void attachArtifact(MavenProject project, String type,
+                File file) {
+            attached.add(file);
+        }
+
+        @Override
+        public void attachArtifact(MavenProject project, String type,
+                String classifier, File file) {
+            attached.add(file);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public void addResource(MavenProject project, String directory,
+                List includes, List excludes) {
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public void addTestResource(MavenProject project, String directory,
+                List includes, List excludes) {
+        }
+    }
+}
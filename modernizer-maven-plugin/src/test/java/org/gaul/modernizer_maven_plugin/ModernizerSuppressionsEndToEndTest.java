@@ -22,11 +22,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -83,22 +81,20 @@ public final class ModernizerSuppressionsEndToEndTest {
         Collections.<String>emptySet();
     private static final Collection<String> NO_IGNORED_METHODS =
         Collections.<String>emptySet();
-    private static List<Pattern> ignoreClasses;
+    private static Set<String> ignoreClasses;
     private static Set<String> ignoreMethods;
 
     @BeforeClass
     public static void setUp() throws Exception {
         violations = ModernizerTestUtils.readViolations();
-        ignoreClasses = new ArrayList<Pattern>();
+        ignoreClasses = new HashSet<String>();
         ignoreMethods = new HashSet<String>();
         String currentDirectory = System.getProperty("user.dir");
         String ignoreClassesFilePath = currentDirectory +
             "/target/modernizer/test/ignore-annotated-classes.txt";
         String ignoreMethodsFilePath = currentDirectory +
             "/target/modernizer/test/ignore-annotated-methods.txt";
-        for (String ignoreClass : readExclusionsFile(ignoreClassesFilePath)) {
-            ignoreClasses.add(Pattern.compile(ignoreClass));
-        }
+        ignoreClasses.addAll(readExclusionsFile(ignoreClassesFilePath));
         ignoreMethods.addAll(readExclusionsFile(ignoreMethodsFilePath));
     }
 
@@ -146,7 +142,7 @@ public final class ModernizerSuppressionsEndToEndTest {
         Modernizer modernizer = new Modernizer(
             "1.6", violations, NO_EXCLUSIONS,
             NO_EXCLUSION_PATTERNS, NO_IGNORED_PACKAGES,
-            ignoreClasses, NO_IGNORED_METHODS);
+            NO_EXCLUSION_PATTERNS, ignoreClasses, NO_IGNORED_METHODS);
         return modernizer.check(cr);
     }
 
@@ -18,7 +18,9 @@ package org.gaul.modernizer_maven_plugin;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
@@ -31,6 +33,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.Vector;
@@ -72,6 +75,7 @@ import org.joda.time.LocalDateTime;
 import org.joda.time.LocalTime;
 import org.joda.time.Period;
 import org.joda.time.format.DateTimeFormat;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.objectweb.asm.ClassReader;
@@ -112,6 +116,42 @@ public final class ModernizerTest {
         assertThat(occurrences).hasSize(0);
     }
 
+    @Test
+    public void testReuseVisitorAcrossClasses() throws Exception {
+        Modernizer modernizer = createModernizer("1.2");
+        Collection<ViolationOccurrence> first = modernizer.check(
+                new ClassReader(VectorTestClass.class.getName()));
+        Collection<ViolationOccurrence> second = modernizer.check(
+                new ClassReader(ArrayListTestClass.class.getName()));
+        Collection<ViolationOccurrence> third = modernizer.check(
+                new ClassReader(VectorTestClass.class.getName()));
+        assertThat(first).hasSize(1);
+        assertThat(second).isEmpty();
+        assertThat(third).hasSize(1);
+        assertThat(third).isNotSameAs(first);
+        // callers may add cached occurrences to the result
+        second.addAll(first);
+        assertThat(second).hasSize(1);
+    }
+
+    @Test
+    public void testCountOccurrences() throws Exception {
+        ClassReader cr = new ClassReader(VectorTestClass.class.getName());
+        Modernizer modernizer = createModernizer("1.2");
+        Violation violation = modernizer.check(cr).iterator().next()
+                .getViolation();
+        ViolationCounts counts = new ViolationCounts();
+        modernizer.check(cr, counts);
+        modernizer.check(cr, counts);
+        modernizer.check(new ClassReader(
+                ArrayListTestClass.class.getName()), counts);
+        assertThat(counts.get(violation)).isEqualTo(2);
+        assertThat(counts.getTotal()).isEqualTo(2);
+        assertThat(counts.getViolations()).containsExactly(violation);
+        // the visitor collects occurrences again after counting
+        assertThat(modernizer.check(cr)).hasSize(1);
+    }
+
     @Test
     public void testConstructorLegacyApiCurrentJava() throws Exception {
         ClassReader cr = new ClassReader(VectorTestClass.class.getName());
@@ -318,6 +358,298 @@ public final class ModernizerTest {
                 .isEqualTo(name);
     }
 
+    @Test
+    public void testConstantPoolFilter() throws Exception {
+        ConstantPoolFilter filter = new ConstantPoolFilter(
+                new ViolationIndex(violations).getOwners());
+        assertThat(filter.mayReference(new ClassReader(
+                ArrayListTestClass.class.getName()))).isFalse();
+        assertThat(filter.mayReference(new ClassReader(
+                VectorTestClass.class.getName()))).isTrue();
+        assertThat(filter.mayReference(new ClassReader(
+                VoidSupplier.class.getName()))).isTrue();
+    }
+
+    @Test
+    public void testConstantPoolFilterAnnotationDescriptor() throws Exception {
+        String name = TestAnnotation.class.getName().replace('.', '/');
+        ConstantPoolFilter filter = new ConstantPoolFilter(
+                Collections.singleton(name));
+        assertThat(filter.mayReference(new ClassReader(
+                AnnotatedMethod.class.getName()))).isTrue();
+        assertThat(filter.mayReference(new ClassReader(
+                ArrayListTestClass.class.getName()))).isFalse();
+    }
+
+    @Test
+    public void testViolationIndex() throws Exception {
+        ViolationIndex index = new ViolationIndex(violations);
+        assertThat(index.getMember("java/util/Vector", "<init>", "()V")
+                .getName()).isEqualTo("java/util/Vector.\"<init>\":()V");
+        assertThat(index.getMember("java/lang/String", "getBytes",
+                "(Ljava/lang/String;)[B").getName()).isEqualTo(
+                "java/lang/String.getBytes:(Ljava/lang/String;)[B");
+        assertThat(index.getMember("java/lang/String", "getBytes",
+                "(Ljava/nio/charset/Charset;)[B")).isNull();
+        assertThat(index.getMember("java/util/ArrayList", "<init>", "()V"))
+                .isNull();
+        assertThat(index.getType("com/google/common/base/Supplier")
+                .getName()).isEqualTo("com/google/common/base/Supplier");
+        assertThat(index.getType("java/lang/String")).isNull();
+    }
+
+    @Test
+    public void testRuleSet() throws Exception {
+        String getBytes = "java/lang/String.getBytes:(Ljava/lang/String;)[B";
+        String vector = "java/util/Vector.\"<init>\":()V";
+        RuleSet ruleSet = new RuleSet(6, violations,
+                Collections.singleton(getBytes),
+                Collections.singleton(Pattern.compile("java/util/.*")));
+        Map<String, Violation> applicable = ruleSet.getViolations();
+        assertThat(applicable).doesNotContainKey(getBytes);
+        assertThat(applicable).doesNotContainKey(vector);
+        assertThat(applicable).doesNotContainKey(
+                "com/google/common/base/Supplier");
+        assertThat(applicable).containsKey(
+                "java/lang/Integer.\"<init>\":(I)V");
+        for (Violation violation : applicable.values()) {
+            assertThat(violation.getVersion()).isLessThanOrEqualTo(6);
+        }
+        assertThat(ruleSet.getIndex().getMember("java/util/Vector", "<init>",
+                "()V")).isNull();
+    }
+
+    @Test
+    public void testIgnoredMethods() throws Exception {
+        IgnoredMethods ignoredMethods = new IgnoredMethods(Lists.newArrayList(
+                "org/gaul/Outer$Inner method int[][] java.lang.String long",
+                "org/gaul/Outer$Inner method void org.gaul.Outer.Inner",
+                "org/gaul/Outer$Inner <init> void org.gaul.Outer"));
+        Map<String, List<String[]>> methods =
+                ignoredMethods.getMethods("org/gaul/Outer$Inner");
+        assertThat(ignoredMethods.getMethods("org/gaul/Outer")).isNull();
+        assertThat(IgnoredMethods.contains(methods, "method",
+                "(Ljava/lang/String;J)[[I")).isTrue();
+        assertThat(IgnoredMethods.contains(methods, "method",
+                "(Ljava/lang/String;J)[I")).isFalse();
+        assertThat(IgnoredMethods.contains(methods, "method",
+                "(Ljava/lang/String;)[[I")).isFalse();
+        assertThat(IgnoredMethods.contains(methods, "method",
+                "(Lorg/gaul/Outer$Inner;)V")).isTrue();
+        assertThat(IgnoredMethods.contains(methods, "method",
+                "(Lorg/gaul/Outer;)V")).isFalse();
+        assertThat(IgnoredMethods.contains(methods, "<init>",
+                "(Lorg/gaul/Outer;)V")).isTrue();
+        assertThat(IgnoredMethods.contains(methods, "<init>", "()V"))
+                .isFalse();
+        assertThat(IgnoredMethods.contains(methods, "other", "()V"))
+                .isFalse();
+    }
+
+    @Test
+    public void testPackageTrie() throws Exception {
+        PackageTrie trie = new PackageTrie(Lists.newArrayList(
+                "org.gaul", "com"));
+        assertThat(trie.containsPackageOf("org/gaul/Foo")).isTrue();
+        assertThat(trie.containsPackageOf("org/gaul/bar/Foo")).isTrue();
+        assertThat(trie.containsPackageOf("com/google/Foo")).isTrue();
+        assertThat(trie.containsPackageOf("org/gau/Foo")).isFalse();
+        assertThat(trie.containsPackageOf("org/gaulx/Foo")).isFalse();
+        assertThat(trie.containsPackageOf("org/Foo")).isFalse();
+        assertThat(trie.containsPackageOf("Foo")).isFalse();
+        assertThat(new PackageTrie(Collections.singleton(""))
+                .containsPackageOf("Foo")).isTrue();
+    }
+
+    @Test
+    public void testParseViolations() throws Exception {
+        Map<String, Violation> parsed = parseViolations(
+                "<modernizer>\n" +
+                "  <violation>\n" +
+                "    <name>java/lang/Foo.bar:()V</name>\n" +
+                "    <version>1.7</version>\n" +
+                "    <extra><name>ignored</name></extra>\n" +
+                "    <comment>Prefer baz</comment>\n" +
+                "  </violation>\n" +
+                "</modernizer>\n");
+        assertThat(parsed).hasSize(1);
+        assertThat(parsed.get("java/lang/Foo.bar:()V").toString())
+                .isEqualTo("java/lang/Foo.bar:()V 7 Prefer baz");
+    }
+
+    @Test
+    public void testParseViolationsErrorLocation() throws Exception {
+        String header = "<modernizer>\n  <violation>\n" +
+                "    <name>java/lang/Foo.bar:()V</name>\n";
+        assertParseError(header + "    <version>7</version>\n",
+                "test.xml:4:");
+        assertParseError(header + "    <comment>x</comment>\n" +
+                "  </violation>\n</modernizer>\n", "test.xml:2:");
+        assertParseError(header + "    <version>1.7</versio>\n",
+                "test.xml:4:");
+    }
+
+    private static Map<String, Violation> parseViolations(String xml)
+            throws Exception {
+        return Modernizer.parseFromXml(new ByteArrayInputStream(
+                xml.getBytes(Utils.UTF_8)), "test.xml");
+    }
+
+    private static void assertParseError(String xml, String prefix)
+            throws Exception {
+        try {
+            parseViolations(xml);
+            Assert.fail("Expected IOException");
+        } catch (IOException ioe) {
+            assertThat(ioe.getMessage()).startsWith(prefix);
+        }
+    }
+
+    @Test
+    public void testViolationDatabase() throws Exception {
+        InputStream is = Modernizer.class.getResourceAsStream(
+                ViolationDatabase.RESOURCE_NAME);
+        assertThat(is).isNotNull();
+        Map<String, Violation> bundled;
+        try {
+            bundled = ViolationDatabase.read(is);
+        } finally {
+            Utils.closeQuietly(is);
+        }
+        assertThat(bundled).hasSameSizeAs(violations);
+        for (Violation violation : violations.values()) {
+            Violation other = bundled.get(violation.getName());
+            assertThat(other).isNotNull();
+            assertThat(other.toString()).isEqualTo(violation.toString());
+        }
+    }
+
+    @Test
+    public void testIgnoredClasses() throws Exception {
+        IgnoredClasses ignored = new IgnoredClasses(Lists.newArrayList(
+                "org/gaul/Foo", "org/gaul/Bar$Inner",
+                "org/gaul/Legacy\\$Inner(\\$.+)?"));
+        assertThat(ignored.contains("org/gaul/Foo")).isTrue();
+        assertThat(ignored.contains("org/gaul/Foo$1")).isTrue();
+        assertThat(ignored.contains("org/gaul/Foo$Inner$Deeper")).isTrue();
+        assertThat(ignored.contains("org/gaul/Foox")).isFalse();
+        assertThat(ignored.contains("org/gaul/Bar")).isFalse();
+        assertThat(ignored.contains("org/gaul/Bar$Inner$1")).isTrue();
+        assertThat(ignored.contains("org/gaul/Bar$Innerx")).isFalse();
+        assertThat(ignored.contains("org/gaul/Legacy$Inner")).isTrue();
+        assertThat(ignored.contains("org/gaul/Legacy$Inner$1")).isTrue();
+        assertThat(ignored.contains("org/gaul/Legacy")).isFalse();
+        assertThat(ignored.contains("org/gaul/$Foo")).isFalse();
+    }
+
+    @Test
+    public void testSuppressionsLoadLazily() throws Exception {
+        Suppressions suppressions = new Suppressions(
+                Collections.singleton("org.gaul"), NO_EXCLUSION_PATTERNS,
+                Collections.singleton("com/example/Foo"),
+                Collections.singleton("com/example/Bar method void int"));
+        assertThat(suppressions.isLoaded()).isFalse();
+        assertThat(suppressions.isClassIgnored("org/gaul/Baz")).isTrue();
+        assertThat(suppressions.isLoaded()).isTrue();
+        assertThat(suppressions.isClassIgnored("com/example/Foo$1")).isTrue();
+        assertThat(suppressions.isClassIgnored("com/example/Bar")).isFalse();
+        assertThat(suppressions.getMethods("com/example/Bar"))
+                .containsKey("method");
+    }
+
+    @Test
+    public void testRuleFingerprint() throws Exception {
+        Modernizer modernizer = createModernizer("1.8");
+        Modernizer ignoring = new Modernizer("1.8", violations, NO_EXCLUSIONS,
+                NO_EXCLUSION_PATTERNS, Collections.singleton("org.gaul"),
+                NO_EXCLUSION_PATTERNS, NO_IGNORED_METHODS);
+        assertThat(ignoring.getFingerprint())
+                .isNotEqualTo(modernizer.getFingerprint());
+        assertThat(ignoring.getRuleFingerprint())
+                .isEqualTo(modernizer.getRuleFingerprint());
+        assertThat(createModernizer("1.7").getRuleFingerprint())
+                .isNotEqualTo(modernizer.getRuleFingerprint());
+        assertThat(ignoring.isClassIgnored("org/gaul/Foo$1")).isTrue();
+        assertThat(modernizer.isClassIgnored("org/gaul/Foo$1")).isFalse();
+    }
+
+    @Test
+    public void testWithoutIgnores() throws Exception {
+        Modernizer ignoring = new Modernizer("1.8", violations, NO_EXCLUSIONS,
+                NO_EXCLUSION_PATTERNS, Collections.singleton("org.gaul"),
+                NO_EXCLUSION_PATTERNS, NO_IGNORED_METHODS);
+        ClassReader cr = new ClassReader(VectorTestClass.class.getName());
+        assertThat(ignoring.check(cr)).isEmpty();
+        Modernizer rulesOnly = ignoring.withoutIgnores();
+        assertThat(rulesOnly.check(cr)).hasSize(1);
+        assertThat(rulesOnly.getFingerprint())
+                .isEqualTo(ignoring.getRuleFingerprint());
+        assertThat(rulesOnly.getRuleFingerprint())
+                .isEqualTo(ignoring.getRuleFingerprint());
+        assertThat(ignoring.withoutIgnores()).isSameAs(rulesOnly);
+        Modernizer modernizer = createModernizer("1.8");
+        assertThat(modernizer.withoutIgnores()).isSameAs(modernizer);
+    }
+
+    @Test
+    public void testPatternSet() throws Exception {
+        String[] regexes = {
+            "", "org/gaul/Foo", "org/.*/Foo", "org/gaul/Foo(\\$.+)?",
+            "[a-c]+\\d*", "[^/]+", "(?:ab|c)*?d", "a|b|", "\\w+\\$\\w+",
+            "[-a]x[b-]", "a?b+c*", "^org.*", "a{2}", "(?=a)a", "\\Qa\\E",
+            "(a*)*b"
+        };
+        String[] inputs = {
+            "", "a", "b", "d", "abcd", "cabd", "aab", "abc1", "org/gaul/Foo",
+            "org/gaul/Foo$Bar", "org/gaul/Foo$", "org/x/y/Foo", "Foo$Bar",
+            "-xb", "ax-", "aa", "a\nb", "bbb"
+        };
+        for (String regex : regexes) {
+            Pattern pattern = Pattern.compile(regex);
+            PatternSet patterns = new PatternSet(
+                    Collections.singleton(pattern));
+            for (String input : inputs) {
+                assertThat(patterns.matchesAny(input))
+                        .as(regex + " " + input)
+                        .isEqualTo(pattern.matcher(input).matches());
+            }
+        }
+        assertThat(new PatternSet(Collections.<Pattern>emptyList())
+                .matchesAny("")).isFalse();
+
+        PatternSet patterns = new PatternSet(Lists.newArrayList(
+                Pattern.compile("org/gaul/.*"), Pattern.compile("com/.*"),
+                Pattern.compile("FOO", Pattern.CASE_INSENSITIVE)));
+        assertThat(patterns.matchesAny("org/gaul/Foo")).isTrue();
+        assertThat(patterns.matchesAny("com/Foo")).isTrue();
+        assertThat(patterns.matchesAny("foo")).isTrue();
+        assertThat(patterns.matchesAny("net/Foo")).isFalse();
+
+        // exponential with a backtracking matcher
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10000; ++i) {
+            input.append('a');
+        }
+        assertThat(new PatternSet(Collections.singleton(
+                Pattern.compile("(a|aa)+(a+)+b"))).matchesAny(input))
+                .isFalse();
+    }
+
+    @Test
+    public void testFingerprint() throws Exception {
+        String fingerprint = createModernizer("1.6").getFingerprint();
+        assertThat(createModernizer("1.6").getFingerprint())
+                .isEqualTo(fingerprint);
+        assertThat(createModernizer("1.7").getFingerprint())
+                .isNotEqualTo(fingerprint);
+        Collection<String> exclusions = Collections.singleton(
+                "java/lang/String.getBytes:(Ljava/lang/String;)[B");
+        assertThat(new Modernizer("1.6", violations, exclusions,
+                NO_EXCLUSION_PATTERNS, NO_IGNORED_PACKAGES,
+                NO_EXCLUSION_PATTERNS, NO_IGNORED_METHODS).getFingerprint())
+                .isNotEqualTo(fingerprint);
+    }
+
     @Test
     public void testImmutableList() throws Exception {
         ClassReader cr = new ClassReader(
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gaul.modernizer_maven_plugin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class ModuleStampTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<String> configuration =
+            Collections.singletonList("engine key");
+    private final Map<String, File> noArtifacts =
+            Collections.<String, File>emptyMap();
+    private File file;
+    private List<File> files;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File(temporaryFolder.getRoot(), "Foo.class");
+        write(file, new byte[] {1, 2, 3});
+        assertThat(file.setLastModified(1000000L)).isTrue();
+        files = Collections.singletonList(file);
+    }
+
+    @Test
+    public void testModifiedClassChangesStamp() throws Exception {
+        String stamp = ModuleStamp.compute(configuration, files, noArtifacts);
+        assertThat(ModuleStamp.compute(configuration, files, noArtifacts))
+                .isEqualTo(stamp);
+
+        assertThat(file.setLastModified(2000000L)).isTrue();
+        assertThat(ModuleStamp.compute(configuration, files, noArtifacts))
+                .isNotEqualTo(stamp);
+    }
+
+    @Test
+    public void testResizedClassChangesStamp() throws Exception {
+        String stamp = ModuleStamp.compute(configuration, files, noArtifacts);
+        write(file, new byte[] {1, 2, 3, 4});
+        assertThat(file.setLastModified(1000000L)).isTrue();
+        assertThat(ModuleStamp.compute(configuration, files, noArtifacts))
+                .isNotEqualTo(stamp);
+    }
+
+    @Test
+    public void testAddedArtifactChangesStamp() throws Exception {
+        String stamp = ModuleStamp.compute(configuration, files, noArtifacts);
+        assertThat(ModuleStamp.compute(configuration, files,
+                Collections.singletonMap("org.example:foo:jar:1.0", file)))
+                .isNotEqualTo(stamp);
+    }
+
+    @Test
+    public void testStaleStampIsNotReplayed() throws Exception {
+        File stampFile = new File(temporaryFolder.getRoot(), "stamp.bin");
+        String stamp = ModuleStamp.compute(configuration, files, noArtifacts);
+        List<String> messages = Arrays.asList(
+                "Foo.java:1: Prefer java.util.ArrayList",
+                "Foo.java:2: Prefer java.lang.StringBuilder");
+        ModuleStamp.write(stampFile, stamp, messages);
+        assertThat(ModuleStamp.read(stampFile, stamp)).isEqualTo(messages);
+
+        assertThat(file.setLastModified(2000000L)).isTrue();
+        assertThat(ModuleStamp.read(stampFile, ModuleStamp.compute(
+                configuration, files, noArtifacts))).isNull();
+    }
+
+    private static void write(File file, byte[] contents) throws IOException {
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(contents);
+        } finally {
+            Utils.closeQuietly(os);
+        }
+    }
+}
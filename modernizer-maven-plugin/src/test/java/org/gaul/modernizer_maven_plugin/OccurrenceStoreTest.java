@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class OccurrenceStoreTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Violation vector;
+    private Violation hashtable;
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, Violation> violations =
+                ModernizerTestUtils.readViolations();
+        vector = violations.get("java/util/Vector.\"<init>\":()V");
+        hashtable = violations.get("java/util/Hashtable.\"<init>\":()V");
+        directory = new File(temporaryFolder.getRoot(), "spill");
+    }
+
+    @Test
+    public void testReadInMemory() throws Exception {
+        OccurrenceStore store = new OccurrenceStore(1024 * 1024, directory);
+        addUnits(store);
+        assertThat(store.hasSpilled()).isFalse();
+        assertThat(read(store)).containsExactly(expected());
+        store.close();
+    }
+
+    @Test
+    public void testSpillPreservesOrder() throws Exception {
+        // two occurrences fit in memory
+        OccurrenceStore store = new OccurrenceStore(40, directory);
+        addUnits(store);
+        assertThat(store.hasSpilled()).isTrue();
+        assertThat(store.size()).isEqualTo(6);
+        assertThat(read(store)).containsExactly(expected());
+        store.close();
+        assertThat(directory.list()).isEmpty();
+    }
+
+    @Test
+    public void testAddAfterOpenIsDiscarded() throws Exception {
+        OccurrenceStore store = new OccurrenceStore(1024 * 1024, directory);
+        addUnits(store);
+        List<String> results = read(store);
+        // as from a task which finishes after cancellation
+        store.add(4, Collections.singleton(
+                new ViolationOccurrence("Late", 9, vector)));
+        assertThat(store.size()).isEqualTo(6);
+        assertThat(read(store)).isEqualTo(results);
+        store.close();
+    }
+
+    /** Add units out of order as concurrent scanning threads would. */
+    private void addUnits(OccurrenceStore store) throws Exception {
+        List<ViolationOccurrence> unit2 = new ArrayList<ViolationOccurrence>();
+        unit2.add(new ViolationOccurrence("Baz", 3, vector));
+        unit2.add(new ViolationOccurrence("Baz", 1, hashtable));
+        store.add(2, unit2);
+        store.add(1, Collections.<ViolationOccurrence>emptyList());
+        Map<String, Collection<ViolationOccurrence>> jar =
+                new LinkedHashMap<String, Collection<ViolationOccurrence>>();
+        jar.put("b/B.class", Collections.singleton(
+                new ViolationOccurrence("b/B", 7, vector)));
+        jar.put("a/A.class", Collections.singleton(
+                new ViolationOccurrence("a/A", 8, hashtable)));
+        store.add(3, jar);
+        List<ViolationOccurrence> unit0 = new ArrayList<ViolationOccurrence>();
+        unit0.add(new ViolationOccurrence("Foo", 5, vector));
+        unit0.add(new ViolationOccurrence("Foo$1", 6, vector));
+        store.add(0, unit0);
+    }
+
+    private static String[] expected() {
+        return new String[] {
+            "0 null Foo 5 " + "java/util/Vector.\"<init>\":()V",
+            "0 null Foo$1 6 " + "java/util/Vector.\"<init>\":()V",
+            "2 null Baz 3 " + "java/util/Vector.\"<init>\":()V",
+            "2 null Baz 1 " + "java/util/Hashtable.\"<init>\":()V",
+            "3 b/B.class b/B 7 " + "java/util/Vector.\"<init>\":()V",
+            "3 a/A.class a/A 8 " + "java/util/Hashtable.\"<init>\":()V"
+        };
+    }
+
+    private static List<String> read(OccurrenceStore store) throws Exception {
+        List<String> results = new ArrayList<String>();
+        OccurrenceStore.Cursor cursor = store.open();
+        try {
+            while (cursor.next()) {
+                ViolationOccurrence occurrence = cursor.getOccurrence();
+                results.add(cursor.getUnit() + " " + cursor.getEntry() + " " +
+                        occurrence.getOwner() + " " +
+                        occurrence.getLineNumber() + " " +
+                        occurrence.getViolation().getName());
+            }
+        } finally {
+            cursor.close();
+        }
+        return results;
+    }
+}
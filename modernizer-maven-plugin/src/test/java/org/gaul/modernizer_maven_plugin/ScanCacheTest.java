@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class ScanCacheTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Map<String, Violation> violations;
+    private Violation violation;
+
+    @Before
+    public void setUp() throws Exception {
+        violations = ModernizerTestUtils.readViolations();
+        violation = violations.get("java/util/Vector.\"<init>\":()V");
+    }
+
+    @Test
+    public void testSaveRetainsOnlyUsedEntries() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "cache.bin");
+        ScanCache cache = ScanCache.create(file, "fingerprint", violations);
+        cache.put("used", Collections.singleton(
+                new ViolationOccurrence("\"<init>\"", 42, violation)));
+        cache.put("unused", Collections.<ViolationOccurrence>emptySet());
+        cache.save();
+        cache.close();
+
+        ScanCache loaded = ScanCache.load(file, "fingerprint", violations);
+        ViolationOccurrence occurrence =
+                loaded.get("used").iterator().next();
+        assertThat(occurrence.getLineNumber()).isEqualTo(42);
+        assertThat(occurrence.getViolation()).isSameAs(violation);
+        loaded.save();
+        loaded.close();
+
+        ScanCache reloaded = ScanCache.load(file, "fingerprint", violations);
+        assertThat(reloaded.get("used")).hasSize(1);
+        assertThat(reloaded.get("unused")).isNull();
+        reloaded.close();
+    }
+
+    @Test
+    public void testUnknownViolationIsMiss() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "cache.bin");
+        ScanCache cache = ScanCache.create(file, "fingerprint", violations);
+        cache.put("hash", Collections.singleton(
+                new ViolationOccurrence("\"<init>\"", 42, violation)));
+        cache.save();
+        cache.close();
+
+        ScanCache loaded = ScanCache.load(file, "fingerprint",
+                Collections.<String, Violation>emptyMap());
+        assertThat(loaded.get("hash")).isNull();
+        loaded.close();
+    }
+
+    @Test
+    public void testUnsavedEntriesAreDiscarded() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "cache.bin");
+        ScanCache cache = ScanCache.create(file, "fingerprint", violations);
+        cache.put("hash", Collections.<ViolationOccurrence>emptySet());
+        cache.close();
+
+        assertThat(temporaryFolder.getRoot().list()).isEmpty();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014-2018 Andrew Gaul <andrew@gaul.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gaul.modernizer_maven_plugin;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class ScanIndexTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Map<String, Violation> violations;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        violations = ModernizerTestUtils.readViolations();
+        Violation violation = violations.get("java/util/Vector.\"<init>\":()V");
+        ScanIndex index = new ScanIndex("fingerprint");
+        index.add("org/gaul/Foo.class", "hash1", Collections.singleton(
+                new ViolationOccurrence("org/gaul/Foo", 42, violation)));
+        index.add("org/gaul/Bar.class", "hash2",
+                Collections.<ViolationOccurrence>emptyList());
+        file = new File(temporaryFolder.getRoot(), "index/index.bin");
+        index.write(file);
+    }
+
+    @Test
+    public void testRecordsClassesWithoutOccurrences() throws Exception {
+        ScanIndex index = ScanIndex.read(file, "fingerprint", violations);
+        assertThat(index.getClassHashes()).containsOnlyKeys(
+                "org/gaul/Bar.class", "org/gaul/Foo.class");
+        assertThat(index.getClassHashes().get("org/gaul/Bar.class"))
+                .isEqualTo("hash2");
+        assertThat(index.getOccurrences()).containsOnlyKeys(
+                "org/gaul/Foo.class");
+    }
+
+    @Test
+    public void testIndexOfAnotherFormatIsIgnored() throws Exception {
+        DataFiles.write(file, 1, "fingerprint", new DataFiles.Contents() {
+            @Override
+            public void write(DataOutputStream out) throws IOException {
+                out.writeInt(0);
+            }
+        });
+        assertThat(ScanIndex.read(file, "fingerprint", violations)).isNull();
+    }
+}